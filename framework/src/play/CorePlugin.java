@@ -9,6 +9,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TreeMap;
 
 import org.apache.commons.lang.StringUtils;
 import play.Play.Mode;
@@ -22,9 +23,13 @@ import play.classloading.enhancers.PropertiesEnhancer;
 import play.classloading.enhancers.SigEnhancer;
 import play.exceptions.UnexpectedException;
 import play.libs.Crypto;
+import play.libs.Metrics;
+import play.mvc.ActionRegistry;
 import play.mvc.Http.Header;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
+import play.mvc.Router.Route;
+import play.utils.WheelTimer;
 
 /**
  * Plugin used for core tasks
@@ -67,7 +72,7 @@ public class CorePlugin extends PlayPlugin {
     }
 
     /**
-     * Intercept /@status and check that the Authorization header is valid. 
+     * Intercept /@status and /@metrics, and check that the Authorization header is valid. 
      * Then ask each plugin for a status dump and send it over the HTTP response.
      *
      * You can ask the /@status using the authorization header and putting your status secret key in it.
@@ -83,7 +88,7 @@ public class CorePlugin extends PlayPlugin {
                 Logger.error("Cannot execute @kill since Play is not running as standalone server");
             }
         }
-        if (request.path.equals("/@status") || request.path.equals("/@status.json")) {
+        if (request.path.equals("/@status") || request.path.equals("/@status.json") || request.path.equals("/@metrics")) {
             if(!Play.started) {
                 response.print("Application is not started");
                 response.status = 503;
@@ -92,7 +97,13 @@ public class CorePlugin extends PlayPlugin {
             response.contentType = request.path.contains(".json") ? "application/json" : "text/plain";
             Header authorization = request.headers.get("authorization");
             if (authorization != null && (Crypto.sign("@status").equals(authorization.value()) || System.getProperty("statusKey", Play.secretKey).equals(authorization.value()))) {
-                response.print(computeApplicationStatus(request.path.contains(".json")));
+                if (request.path.equals("/@metrics")) {
+                    // The Prometheus text format
+                    response.contentType = "text/plain; version=0.0.4";
+                    response.print(Metrics.toPrometheus());
+                } else {
+                    response.print(computeApplicationStatus(request.path.contains(".json")));
+                }
                 response.status = 200;
                 return true;
             }
@@ -107,6 +118,86 @@ public class CorePlugin extends PlayPlugin {
         return super.rawInvocation(request, response);
     }
 
+    /**
+     * The request args key of the route statistics of a request
+     */
+    static final String ROUTE_METRICS = "__ROUTE_METRICS";
+
+    /**
+     * A request being counted in its route statistics
+     */
+    static class RouteSample {
+
+        final Metrics.RouteStats stats;
+        final long start;
+
+        RouteSample(Metrics.RouteStats stats) {
+            this.stats = stats;
+            this.start = stats.start();
+        }
+    }
+
+    @Override
+    public void onRequestRouting(Route route) {
+        Request request = Request.current();
+        if (request != null && route != null) {
+            request.args.put(ROUTE_METRICS, new RouteSample(Metrics.route(route)));
+        }
+    }
+
+    @Override
+    public void afterActionInvocation() {
+        Response response = Response.current();
+        completeRouteSample(response == null ? 200 : response.status);
+    }
+
+    @Override
+    public void onInvocationException(Throwable e) {
+        completeRouteSample(500);
+    }
+
+    @Override
+    public void onInvocationSuccess() {
+        // ie. the client was gone before the action was invoked
+        Response response = Response.current();
+        completeRouteSample(response == null ? 200 : response.status);
+    }
+
+    /**
+     * Count the current request as complete in its route statistics, ie. when it is answered without being invoked
+     *
+     * @param status The status of the response
+     */
+    public static void completeRouteSample(int status) {
+        Request request = Request.current();
+        if (request != null) {
+            RouteSample sample = (RouteSample) request.args.remove(ROUTE_METRICS);
+            if (sample != null) {
+                sample.stats.stop(sample.start, status);
+            }
+        }
+    }
+
+    @Override
+    public void onRoutesLoaded() {
+        Metrics.routesReloaded();
+    }
+
+    /**
+     * In PROD mode, resolve all the actions up front.
+     */
+    @Override
+    public void onApplicationStart() {
+        if (Play.mode == Mode.PROD) {
+            try {
+                ActionRegistry.build();
+            } catch (Throwable e) {
+                // Actions will be resolved on demand
+                Logger.warn(e, "Cannot register the application actions");
+            }
+        }
+    }
+
     /**
      * Retrieve status about play core.
      */
@@ -164,6 +255,35 @@ public class CorePlugin extends PlayPlugin {
         out.println("Scheduled task count: " + Invoker.executor.getTaskCount());
         out.println("Queue size: " + Invoker.executor.getQueue().size());
         out.println();
+        out.println("Timer:");
+        out.println("~~~~~~");
+        out.println("Pending tasks: " + WheelTimer.getPending());
+        out.println("Scheduled tasks: " + WheelTimer.getScheduled());
+        out.println("Cancelled tasks: " + WheelTimer.getCancelled());
+        out.println();
+        if (!Invoker.pools.isEmpty()) {
+            out.println("Named execution pools:");
+            out.println("~~~~~~~~~~~~~~~~~~~~~~");
+            for (Invoker.Bulkhead pool : new TreeMap<String, Invoker.Bulkhead>(Invoker.pools).values()) {
+                out.println(String.format("%-20s -> %4d size; %4d active; %6d queued; %8d rejected;", pool.name, pool.executor.getPoolSize(),
+                        pool.executor.getActiveCount(), pool.executor.getQueue().size(), pool.rejected.get()));
+            }
+            out.println();
+        }
+        out.println("Actions:");
+        out.println("~~~~~~~~");
+        for (ActionRegistry.Entry entry : ActionRegistry.all()) {
+            out.println(entry);
+        }
+        out.println();
+        out.println("Request phases (ms):");
+        out.println("~~~~~~~~~~~~~~~~~~~~");
+        out.print(Metrics.toText());
+        out.println();
+        out.println("Routes (ms):");
+        out.println("~~~~~~~~~~~~");
+        out.print(Metrics.routesToText());
+        out.println();
         try {
             out.println("Monitors:");
             out.println("~~~~~~~~");
@@ -219,6 +339,41 @@ public class CorePlugin extends PlayPlugin {
             status.add("pool", pool);
         }
 
+        {
+            JsonObject timer = new JsonObject();
+            timer.addProperty("pending", WheelTimer.getPending());
+            timer.addProperty("scheduled", WheelTimer.getScheduled());
+            timer.addProperty("cancelled", WheelTimer.getCancelled());
+            status.add("timer", timer);
+        }
+
+        {
+            JsonObject pools = new JsonObject();
+            for (Invoker.Bulkhead bulkhead : new TreeMap<String, Invoker.Bulkhead>(Invoker.pools).values()) {
+                JsonObject pool = new JsonObject();
+                pool.addProperty("size", bulkhead.executor.getPoolSize());
+                pool.addProperty("active", bulkhead.executor.getActiveCount());
+                pool.addProperty("queue", bulkhead.executor.getQueue().size());
+                pool.addProperty("rejected", bulkhead.rejected.get());
+                pools.add(bulkhead.name, pool);
+            }
+            status.add("pools", pools);
+        }
+
+        {
+            JsonArray actions = new JsonArray();
+            for (ActionRegistry.Entry entry : ActionRegistry.all()) {
+                JsonObject o = new JsonObject();
+                o.addProperty("action", entry.action);
+                o.addProperty("method", entry.method.toString());
+                actions.add(o);
+            }
+            status.add("actions", actions);
+        }
+
+        status.add("phases", Metrics.toJson());
+        status.add("routes", Metrics.routesToJson());
+
         {
             JsonArray monitors = new JsonArray();
             try {
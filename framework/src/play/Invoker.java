@@ -2,27 +2,40 @@ package play;
 
 import java.lang.annotation.Annotation;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.jamonapi.Monitor;
+import com.ning.http.client.ListenableFuture;
 import com.jamonapi.MonitorFactory;
 import java.util.ArrayList;
 
 import play.Play.Mode;
 import play.classloading.enhancers.LocalvariablesNamesEnhancer.LocalVariablesNamesTracer;
+import play.exceptions.ConfigurationException;
+import play.exceptions.DeadlineExceededException;
 import play.exceptions.PlayException;
 import play.exceptions.UnexpectedException;
 import play.i18n.Lang;
 import play.libs.F;
 import play.libs.F.Promise;
+import play.utils.Action;
 import play.utils.PThreadFactory;
+import play.utils.SmartFuture;
+import play.utils.VirtualThreadExecutor;
+import play.utils.WheelTimer;
 
 /**
  * Run some code in a Play! context
@@ -34,6 +47,11 @@ public class Invoker {
      */
     public static ScheduledThreadPoolExecutor executor = null;
 
+    /**
+     * Named executors, by name
+     */
+    public static final Map<String, Bulkhead> pools = new ConcurrentHashMap<String, Bulkhead>();
+
     /**
      * Run the code in a new thread took from a thread pool.
      * @param invocation The code to run
@@ -46,6 +64,27 @@ public class Invoker {
         return executor.submit(invocation);
     }
 
+    /**
+     * Run the code in a named pool, unless the current thread already belongs to it
+     * @param invocation The code to run
+     * @param pool The name of the pool
+     * @return The future object, to know when the task is completed, or null if the current thread belongs to the pool
+     * @throws RejectedExecutionException If the queue of the pool is full
+     */
+    public static Future<?> invoke(final Invocation invocation, String pool) {
+        Bulkhead bulkhead = pool(pool);
+        if (Bulkhead.current() == bulkhead) {
+            return null;
+        }
+        invocation.waitInQueue = MonitorFactory.start("Waiting for execution");
+        try {
+            return bulkhead.executor.submit(invocation);
+        } catch (RejectedExecutionException e) {
+            bulkhead.rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
     /**
      * Run the code in a new thread after a delay
      * @param invocation The code to run
@@ -55,7 +94,79 @@ public class Invoker {
     public static Future<?> invoke(final Invocation invocation, long millis) {
         Monitor monitor = MonitorFactory.getMonitor("Invocation queue", "elmts.");
         monitor.add(executor.getQueue().size());
-        return executor.schedule(invocation, millis, TimeUnit.MILLISECONDS);
+        return WheelTimer.schedule(invocation, millis, TimeUnit.MILLISECONDS, executor);
+    }
+
+    /**
+     * Get a named pool, created on first use from its configuration
+     */
+    public static Bulkhead pool(String name) {
+        Bulkhead pool = pools.get(name);
+        if (pool == null) {
+            synchronized (pools) {
+                pool = pools.get(name);
+                if (pool == null) {
+                    pool = new Bulkhead(name);
+                    pools.put(name, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * A named pool, that runs the actions annotated with {@link play.mvc.Pool}. A slow action cannot take more threads
+     * than its pool has, so that the other actions are still served.
+     */
+    public static class Bulkhead {
+
+        static final ThreadLocal<Bulkhead> current = new ThreadLocal<Bulkhead>();
+
+        public final String name;
+        public final ThreadPoolExecutor executor;
+        /**
+         * Run the invocations rejected by a full pool in the calling thread, instead of answering 503
+         */
+        public final boolean callerRuns;
+        /**
+         * Number of invocations rejected by a full pool
+         */
+        public final AtomicLong rejected = new AtomicLong();
+
+        Bulkhead(final String name) {
+            this.name = name;
+            String prefix = "play.pool." + name + ".";
+            int size = Integer.parseInt(Play.configuration.getProperty(prefix + "size", Play.mode == Mode.DEV ? "1" : ((Runtime.getRuntime().availableProcessors() + 1) + "")));
+            int queue = Integer.parseInt(Play.configuration.getProperty(prefix + "queue", "0"));
+            String rejection = Play.configuration.getProperty(prefix + "rejection", "abort");
+            if (!rejection.equals("abort") && !rejection.equals("caller")) {
+                throw new ConfigurationException("Bad configuration for " + prefix + "rejection: " + rejection + " is neither abort nor caller");
+            }
+            this.callerRuns = rejection.equals("caller");
+            this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                    queue > 0 ? new ArrayBlockingQueue<Runnable>(queue) : new LinkedBlockingQueue<Runnable>(),
+                    new PThreadFactory("play-" + name) {
+
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            return super.newThread(new Runnable() {
+
+                                public void run() {
+                                    current.set(Bulkhead.this);
+                                    r.run();
+                                }
+                            });
+                        }
+                    }, new ThreadPoolExecutor.AbortPolicy());
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * @return The pool of the current thread, null if it is not in a named pool
+         */
+        public static Bulkhead current() {
+            return current.get();
+        }
     }
 
     /**
@@ -91,11 +202,47 @@ public class Invoker {
         public static ThreadLocal<InvocationContext> current = new ThreadLocal<InvocationContext>();
         private final List<Annotation> annotations;
         private final String invocationType;
+        /**
+         * The <code>System.nanoTime()</code> after which the invocation should give up, 0 for none
+         */
+        private long deadline;
 
         public static InvocationContext current() {
             return current.get();
         }
 
+        /**
+         * Get the time left to the current invocation before its deadline
+         *
+         * @param max The longest time an operation can take without deadline, in milliseconds
+         * @return The smallest of max and the time left, in milliseconds
+         * @throws DeadlineExceededException If the deadline is passed: the invocation should give up
+         */
+        public static long timeLeft(long max) {
+            InvocationContext context = current.get();
+            if (context == null || context.deadline == 0) {
+                return max;
+            }
+            long left = context.deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new DeadlineExceededException(context.invocationType + " deadline passed " + TimeUnit.NANOSECONDS.toMillis(-left) + " ms ago");
+            }
+            return Math.min(max, Math.max(1, TimeUnit.NANOSECONDS.toMillis(left)));
+        }
+
+        /**
+         * Set the deadline of the invocation
+         *
+         * @param deadline The <code>System.nanoTime()</code> after which the invocation should give up, 0 for none
+         */
+        public void setDeadline(long deadline) {
+            this.deadline = deadline;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
         public InvocationContext(String invocationType) {
             this.invocationType = invocationType;
             this.annotations = new ArrayList<Annotation>();
@@ -320,8 +467,7 @@ public class Invoker {
      * Init executor at load time.
      */
     static {
-        int core = Integer.parseInt(Play.configuration.getProperty("play.pool", Play.mode == Mode.DEV ? "1" : ((Runtime.getRuntime().availableProcessors() + 1) + "")));
-        executor = new ScheduledThreadPoolExecutor(core, new PThreadFactory("play"), new ThreadPoolExecutor.AbortPolicy());
+        executor = VirtualThreadExecutor.create("play", "play.pool", Play.mode == Mode.DEV ? "1" : ((Runtime.getRuntime().availableProcessors() + 1) + ""));
     }
 
     /**
@@ -363,14 +509,64 @@ public class Invoker {
 
     /**
      * Utility that track tasks completion in order to resume suspended requests.
+     * <p/>
+     * The tasks that can notify their completion (Promise and the async-http-client futures) resume their invocation
+     * directly from their callback. The other ones are polled by a single thread, more and more rarely as they stay
+     * pending: after 1 ms, then 2 ms, up to every 50 ms. A SmartFuture is both: its callbacks only run when it is
+     * invoked, which its wrapped future does not do when it completes.
      */
     static class WaitForTasksCompletion extends Thread {
 
+        static final long MIN_DELAY = TimeUnit.MILLISECONDS.toNanos(1);
+        static final long MAX_DELAY = TimeUnit.MILLISECONDS.toNanos(50);
+
         static WaitForTasksCompletion instance;
-        Map<Future<?>, Invocation> queue;
+        final DelayQueue<Waiting> queue = new DelayQueue<Waiting>();
+
+        /**
+         * A task polled until it is done
+         */
+        static class Waiting implements Delayed {
+
+            final Future<?> task;
+            final Invocation invocation;
+            final AtomicBoolean resumed = new AtomicBoolean();
+            long delay = MIN_DELAY;
+            long due = System.nanoTime() + MIN_DELAY;
+
+            Waiting(Future<?> task, Invocation invocation) {
+                this.task = task;
+                this.invocation = invocation;
+            }
+
+            /**
+             * Resume the invocation, unless it already has been
+             */
+            void resume() {
+                if (resumed.compareAndSet(false, true)) {
+                    executor.submit(invocation);
+                }
+            }
+
+            /**
+             * Check the task again later, twice later than the previous time
+             */
+            void backoff() {
+                delay = Math.min(delay * 2, MAX_DELAY);
+                due = System.nanoTime() + delay;
+            }
+
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+
+            public int compareTo(Delayed other) {
+                long diff = due - ((Waiting) other).due;
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        }
 
         public WaitForTasksCompletion() {
-            queue = new ConcurrentHashMap<Future<?>, Invocation>();
             setName("WaitForTasksCompletion");
             setDaemon(true);
         }
@@ -383,33 +579,55 @@ public class Invoker {
                         executor.submit(invocation);
                     }
                 });
+            } else if (task instanceof ListenableFuture) {
+                // The listener runs at once if the response is already there
+                ((ListenableFuture<V>) task).addListener(invocation, executor);
+            } else if (task.isDone()) {
+                executor.submit(invocation);
             } else {
-                synchronized (WaitForTasksCompletion.class) {
-                    if (instance == null) {
-                        instance = new WaitForTasksCompletion();
-                        Logger.warn("Start WaitForTasksCompletion");
-                        instance.start();
+                final Waiting waiting = new Waiting(task, invocation);
+                if (task instanceof SmartFuture) {
+                    ((SmartFuture<V>) task).onCompletion(new Action<V>() {
+                        public void invoke(V result) {
+                            waiting.resume();
+                        }
+                    });
+                    if (waiting.resumed.get()) {
+                        return;
                     }
-                    instance.queue.put(task, invocation);
                 }
+                poll(waiting);
             }
         }
 
+        static void poll(Waiting waiting) {
+            synchronized (WaitForTasksCompletion.class) {
+                if (instance == null) {
+                    instance = new WaitForTasksCompletion();
+                    Logger.warn("Start WaitForTasksCompletion");
+                    instance.start();
+                }
+            }
+            instance.queue.put(waiting);
+        }
+
         @Override
         public void run() {
             while (true) {
                 try {
-                    if (!queue.isEmpty()) {
-                        for (Future<?> task : new HashSet<Future<?>>(queue.keySet())) {
-                            if (task.isDone()) {
-                                executor.submit(queue.get(task));
-                                queue.remove(task);
-                            }
-                        }
+                    Waiting waiting = queue.take();
+                    if (waiting.resumed.get()) {
+                        // By its callback
+                    } else if (waiting.task.isDone()) {
+                        waiting.resume();
+                    } else {
+                        waiting.backoff();
+                        queue.put(waiting);
                     }
-                    Thread.sleep(50);
                 } catch (InterruptedException ex) {
                     Logger.warn(ex, "While waiting for task completions");
+                } catch (Throwable ex) {
+                    Logger.error(ex, "While resuming a suspended invocation");
                 }
             }
         }
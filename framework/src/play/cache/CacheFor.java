@@ -11,10 +11,28 @@ import java.lang.annotation.Target;
  * <p>If a time is not specified, the results will be cached for 1 hour by default.
  *
  * <p>Example: <code>@CacheFor("1h")</code>
+ *
+ * <p>On a cache miss, only one request per key runs the action on this node, the concurrent ones wait for its result.
+ * With a <code>stale</code> window, an expired result is still served during that window while a background job
+ * computes the new one.
+ *
+ * <p>Example: <code>@CacheFor(value = "10mn", stale = "1h", headers = "Accept-Language")</code>
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface CacheFor {
     String value() default "1h";
     String id() default "";
+    /**
+     * How long an expired result may still be served while it is refreshed. Ex: 30s, 1h
+     */
+    String stale() default "";
+    /**
+     * The request headers the cached result depends on
+     */
+    String[] headers() default {};
+    /**
+     * The session keys the cached result depends on
+     */
+    String[] session() default {};
 }
@@ -0,0 +1,19 @@
+package play.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Tag an action's rendered content with an ETag, computed from the content itself.
+ *
+ * <p>The clients sending a matching If-None-Match header get a 304 Not Modified, without the body. Use the
+ * <code>http.dynamicETag</code> configuration to do it for every action.
+ *
+ * <p>Example: <code>@ETag public static void index() { ... }</code>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ETag {
+}
@@ -20,6 +20,7 @@ import net.spy.memcached.MemcachedClient;
 import net.spy.memcached.auth.AuthDescriptor;
 import net.spy.memcached.auth.PlainCallbackHandler;
 import net.spy.memcached.transcoders.SerializingTranscoder;
+import play.Invoker.InvocationContext;
 import play.Logger;
 import play.Play;
 import play.exceptions.ConfigurationException;
@@ -135,7 +136,7 @@ public class MemcachedImpl implements CacheImpl {
     public Object get(String key) {
         Future<Object> future = client.asyncGet(key, tc);
         try {
-            return future.get(1, TimeUnit.SECONDS);
+            return future.get(InvocationContext.timeLeft(1000), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             future.cancel(false);
         }
@@ -153,7 +154,7 @@ public class MemcachedImpl implements CacheImpl {
     public Map<String, Object> get(String[] keys) {
         Future<Map<String, Object>> future = client.asyncGetBulk(tc, keys);
         try {
-            return future.get(1, TimeUnit.SECONDS);
+            return future.get(InvocationContext.timeLeft(1000), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             future.cancel(false);
         }
@@ -175,7 +176,7 @@ public class MemcachedImpl implements CacheImpl {
     public boolean safeAdd(String key, Object value, int expiration) {
         Future<Boolean> future = client.add(key, expiration, value, tc);
         try {
-            return future.get(1, TimeUnit.SECONDS);
+            return future.get(InvocationContext.timeLeft(1000), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             future.cancel(false);
         }
@@ -185,7 +186,7 @@ public class MemcachedImpl implements CacheImpl {
     public boolean safeDelete(String key) {
         Future<Boolean> future = client.delete(key);
         try {
-            return future.get(1, TimeUnit.SECONDS);
+            return future.get(InvocationContext.timeLeft(1000), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             future.cancel(false);
         }
@@ -195,7 +196,7 @@ public class MemcachedImpl implements CacheImpl {
     public boolean safeReplace(String key, Object value, int expiration) {
         Future<Boolean> future = client.replace(key, expiration, value, tc);
         try {
-            return future.get(1, TimeUnit.SECONDS);
+            return future.get(InvocationContext.timeLeft(1000), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             future.cancel(false);
         }
@@ -205,7 +206,7 @@ public class MemcachedImpl implements CacheImpl {
     public boolean safeSet(String key, Object value, int expiration) {
         Future<Boolean> future = client.set(key, expiration, value, tc);
         try {
-            return future.get(1, TimeUnit.SECONDS);
+            return future.get(InvocationContext.timeLeft(1000), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             future.cancel(false);
         }
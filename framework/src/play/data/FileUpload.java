@@ -2,8 +2,10 @@ package play.data;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -17,6 +19,9 @@ public class FileUpload implements Upload {
 
     FileItem fileItem;
     File defaultFile;
+    String fieldName;
+    String fileName;
+    String contentType;
 
     public FileUpload() {
         // Left empty
@@ -37,6 +42,44 @@ public class FileUpload implements Upload {
         }
     }
 
+    /**
+     * Create an upload from a part of a request body saved in a file. The part is copied by the file system, without
+     * being read.
+     *
+     * @param body     The request body
+     * @param position The part content position in the body file
+     * @param size     The part content size
+     */
+    public FileUpload(String fieldName, String fileName, String contentType, FileChannel body, long position, long size) {
+        this.fieldName = fieldName;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        File tmp = TempFilePlugin.createTempFolder();
+        defaultFile = new File(tmp, FilenameUtils.getName(fieldName) + File.separator + FilenameUtils.getName(fileName));
+        try {
+            if(!defaultFile.getCanonicalPath().startsWith(tmp.getCanonicalPath())) {
+                throw new IOException("Temp file try to override existing file?");
+            }
+            defaultFile.getParentFile().mkdirs();
+            FileOutputStream out = new FileOutputStream(defaultFile);
+            try {
+                FileChannel target = out.getChannel();
+                long copied = 0;
+                while (copied < size) {
+                    long count = body.transferTo(position + copied, size - copied, target);
+                    if (count <= 0) {
+                        throw new IOException("Unexpected end of the request body");
+                    }
+                    copied += count;
+                }
+            } finally {
+                out.close();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Error when trying to write to file " + defaultFile.getAbsolutePath(), e);
+        }
+    }
+
     public File asFile() {
         return defaultFile;
     }
@@ -67,15 +110,15 @@ public class FileUpload implements Upload {
     }
     
     public String getContentType() {
-        return fileItem.getContentType();
+        return fileItem == null ? contentType : fileItem.getContentType();
     }
 
     public String getFileName() {
-        return fileItem.getName();
+        return fileItem == null ? fileName : fileItem.getName();
     }
 
     public String getFieldName() {
-        return fileItem.getFieldName();
+        return fileItem == null ? fieldName : fileItem.getFieldName();
     }
 
     public Long getSize() {
@@ -83,6 +126,6 @@ public class FileUpload implements Upload {
     }
     
     public boolean isInMemory() {
-        return fileItem.isInMemory();
+        return fileItem != null && fileItem.isInMemory();
     }
 }
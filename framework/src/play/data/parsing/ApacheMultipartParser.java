@@ -540,6 +540,13 @@ public class ApacheMultipartParser extends DataParser {
     }
 
     public Map<String, String[]> parse(InputStream body) {
+        if (MappedMultipartParser.accepts(body)) {
+            return new MappedMultipartParser().parse(body);
+        }
+        return parseStream(body);
+    }
+
+    Map<String, String[]> parseStream(InputStream body) {
         Map<String, String[]> result = new HashMap<String, String[]>();
         try {
             FileItemIteratorImpl iter = new FileItemIteratorImpl(body, Request.current().headers.get("content-type").value(), Request.current().encoding);
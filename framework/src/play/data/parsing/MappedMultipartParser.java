@@ -0,0 +1,269 @@
+package play.data.parsing;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.fileupload.ParameterParser;
+import org.apache.commons.io.FilenameUtils;
+
+import play.Logger;
+import play.data.FileUpload;
+import play.data.Upload;
+import play.mvc.Http.Request;
+import play.utils.HTTP;
+
+/**
+ * Parse a multipart body saved in a file, as the large bodies are.
+ * <p/>
+ * The boundaries are searched directly in the memory-mapped file, and the uploaded files are copied from the body
+ * file to their temporary location by the file system (<code>FileChannel.transferTo</code>), without being read.
+ * {@link ApacheMultipartParser} parses the other bodies, and the nested multipart/mixed parts.
+ */
+public class MappedMultipartParser extends DataParser {
+
+    static final byte[] HEADERS_END = {'\r', '\n', '\r', '\n'};
+
+    /**
+     * Thrown to parse the body as a stream instead
+     */
+    static class Unsupported extends Exception {
+
+        Unsupported(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Check if a body can be parsed in place
+     */
+    static boolean accepts(InputStream body) {
+        if (!(body instanceof FileInputStream)) {
+            return false;
+        }
+        try {
+            FileChannel file = ((FileInputStream) body).getChannel();
+            return file.size() - file.position() <= Integer.MAX_VALUE;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Map<String, String[]> parse(InputStream body) {
+        try {
+            return parse((FileInputStream) body, Request.current().headers.get("content-type").value(), Request.current().encoding);
+        } catch (Unsupported e) {
+            if (Logger.isDebugEnabled()) {
+                Logger.debug("%s, parsing the multipart body as a stream", e.getMessage());
+            }
+            Request.current().args.remove("__UPLOADS");
+            return new ApacheMultipartParser().parseStream(body);
+        } catch (IOException e) {
+            Logger.debug(e, "error");
+            throw new IllegalStateException("Error when handling upload", e);
+        }
+    }
+
+    Map<String, String[]> parse(FileInputStream body, String contentType, String encoding) throws IOException, Unsupported {
+        Map<String, String[]> result = new HashMap<String, String[]>();
+        FileChannel file = body.getChannel();
+        long offset = file.position();
+        ByteBuffer content = file.map(FileChannel.MapMode.READ_ONLY, offset, file.size() - offset);
+        String boundary = boundary(contentType);
+        if (boundary == null) {
+            throw new IOException("the request was rejected because no multipart boundary was found");
+        }
+        byte[] delimiter = ("\r\n--" + boundary).getBytes("ISO-8859-1");
+        int[] shifts = shifts(delimiter);
+        int limit = content.limit();
+
+        // The first boundary may not follow a line
+        int position;
+        if (startsWith(content, 0, delimiter, 2)) {
+            position = delimiter.length - 2;
+        } else {
+            position = indexOf(content, delimiter, shifts, 0);
+            if (position < 0) {
+                throw new IOException("Stream ended unexpectedly");
+            }
+            position += delimiter.length;
+        }
+        while (position + 2 <= limit && !(content.get(position) == '-' && content.get(position + 1) == '-')) {
+            // The rest of the boundary line
+            int line = indexOf(content, HEADERS_END, 2, position);
+            if (line < 0) {
+                throw new IOException("Stream ended unexpectedly");
+            }
+            int headersEnd = indexOf(content, HEADERS_END, 4, line);
+            if (headersEnd < 0) {
+                throw new IOException("Stream ended unexpectedly");
+            }
+            Map<String, String> headers = headers(content, line + 2, headersEnd, encoding);
+            int start = headersEnd + 4;
+            int end = indexOf(content, delimiter, shifts, start);
+            if (end < 0) {
+                throw new IOException("Stream ended unexpectedly");
+            }
+            part(result, headers, content, file, offset, start, end, encoding);
+            position = end + delimiter.length;
+        }
+        // The body has been consumed
+        file.position(file.size());
+        return result;
+    }
+
+    void part(Map<String, String[]> result, Map<String, String> headers, ByteBuffer content, FileChannel file, long offset, int start, int end, String encoding) throws IOException, Unsupported {
+        String disposition = headers.get("content-disposition");
+        if (disposition == null) {
+            return;
+        }
+        ParameterParser parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        @SuppressWarnings("unchecked") Map<String, String> parameters = parser.parse(disposition, ';');
+        String fieldName = parameters.get("name");
+        String contentType = headers.get("content-type");
+        if (contentType != null && contentType.toLowerCase().startsWith("multipart/mixed")) {
+            throw new Unsupported("Nested multipart/mixed part");
+        }
+        if (fieldName == null) {
+            return;
+        }
+        if (!parameters.containsKey("filename")) {
+            // A form field
+            String charset = encoding;
+            if (contentType != null) {
+                HTTP.ContentTypeWithEncoding contentTypeEncoding = HTTP.parseContentType(contentType);
+                if (contentTypeEncoding.encoding != null) {
+                    charset = contentTypeEncoding.encoding;
+                }
+            }
+            putMapEntry(result, fieldName, string(content, start, end, charset));
+            return;
+        }
+        // As ApacheMultipartParser names it: an empty name when no file is selected, and no path
+        String fileName = parameters.get("filename");
+        fileName = fileName == null ? "" : fileName.trim();
+        if (fileName.indexOf('\\') != -1) {
+            // IE sends the full path
+            fileName = fileName.substring(fileName.lastIndexOf('\\') + 1);
+        }
+        fileName = FilenameUtils.getName(fileName);
+        @SuppressWarnings("unchecked") List<Upload> uploads = (List<Upload>) Request.current().args.get("__UPLOADS");
+        if (uploads == null) {
+            uploads = new ArrayList<Upload>();
+            Request.current().args.put("__UPLOADS", uploads);
+        }
+        uploads.add(new FileUpload(fieldName, fileName, contentType, file, offset + start, end - start));
+        putMapEntry(result, fieldName, fieldName);
+    }
+
+    static String boundary(String contentType) {
+        ParameterParser parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        return (String) parser.parse(contentType, ';').get("boundary");
+    }
+
+    /**
+     * Parse the headers of a part, with lower case names
+     */
+    static Map<String, String> headers(ByteBuffer content, int start, int end, String encoding) throws UnsupportedEncodingException {
+        Map<String, String> headers = new HashMap<String, String>();
+        if (start >= end) {
+            return headers;
+        }
+        String name = null;
+        for (String line : string(content, start, end, encoding).split("\r\n")) {
+            if (name != null && (line.startsWith(" ") || line.startsWith("\t"))) {
+                // Folded
+                headers.put(name, headers.get(name) + " " + line.trim());
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                name = line.substring(0, colon).trim().toLowerCase();
+                headers.put(name, line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    static String string(ByteBuffer content, int start, int end, String charset) throws UnsupportedEncodingException {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer slice = content.duplicate();
+        slice.position(start);
+        slice.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    static boolean startsWith(ByteBuffer content, int position, byte[] prefix, int from) {
+        if (position + prefix.length - from > content.limit()) {
+            return false;
+        }
+        for (int i = from; i < prefix.length; i++) {
+            if (content.get(position + i - from) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the first bytes of a pattern
+     *
+     * @param length The number of bytes of the pattern to find
+     */
+    static int indexOf(ByteBuffer content, byte[] pattern, int length, int from) {
+        int last = content.limit() - length;
+        for (int i = from; i <= last; i++) {
+            int j = 0;
+            while (j < length && content.get(i + j) == pattern[j]) {
+                j++;
+            }
+            if (j == length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The Boyer-Moore-Horspool shifts of a pattern: how far it can be moved when its last byte is compared to a byte
+     */
+    static int[] shifts(byte[] pattern) {
+        int[] shifts = new int[256];
+        for (int i = 0; i < shifts.length; i++) {
+            shifts[i] = pattern.length;
+        }
+        for (int i = 0; i < pattern.length - 1; i++) {
+            shifts[pattern[i] & 0xff] = pattern.length - 1 - i;
+        }
+        return shifts;
+    }
+
+    /**
+     * Find a pattern, skipping the bytes that cannot match
+     */
+    static int indexOf(ByteBuffer content, byte[] pattern, int[] shifts, int from) {
+        int last = pattern.length - 1;
+        int i = from;
+        while (i + last < content.limit()) {
+            int j = last;
+            while (content.get(i + j) == pattern[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+            i += shifts[content.get(i + last) & 0xff];
+        }
+        return -1;
+    }
+}
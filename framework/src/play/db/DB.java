@@ -4,11 +4,14 @@ import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import javax.sql.DataSource;
 
 import org.hibernate.impl.SessionImpl;
+import play.Invoker.InvocationContext;
 import play.db.jpa.JPA;
 import play.exceptions.DatabaseException;
+import play.exceptions.DeadlineExceededException;
 import play.Logger;
 
 /**
@@ -75,7 +78,9 @@ public class DB {
      */
     public static boolean execute(String SQL) {
         try {
-            return getConnection().createStatement().execute(SQL);
+            Statement statement = getConnection().createStatement();
+            applyDeadline(statement);
+            return statement.execute(SQL);
         } catch (SQLException ex) {
             throw new DatabaseException(ex.getMessage(), ex);
         }
@@ -88,12 +93,27 @@ public class DB {
      */
     public static ResultSet executeQuery(String SQL) {
         try {
-            return getConnection().createStatement().executeQuery(SQL);
+            Statement statement = getConnection().createStatement();
+            applyDeadline(statement);
+            return statement.executeQuery(SQL);
         } catch (SQLException ex) {
             throw new DatabaseException(ex.getMessage(), ex);
         }
     }
 
+    /**
+     * Limit the execution of a statement to the time left before the deadline of the current invocation
+     * @param statement The statement to limit
+     * @throws DeadlineExceededException If the deadline is passed
+     */
+    public static void applyDeadline(Statement statement) throws SQLException {
+        long left = InvocationContext.timeLeft(Long.MAX_VALUE);
+        if (left != Long.MAX_VALUE) {
+            // The query timeout is in seconds, 0 meaning none
+            statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (left + 999) / 1000));
+        }
+    }
+
     /**
      * Destroy the datasource
      */
@@ -4,6 +4,8 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 
+import play.Invoker.InvocationContext;
+import play.exceptions.DeadlineExceededException;
 import play.exceptions.JPAException;
 
 /**
@@ -51,6 +53,19 @@ public class JPA {
         return get().entityManager;
     }
 
+    /**
+     * Limit the queries created by an entity manager to the time left before the deadline of the current invocation
+     *
+     * @throws DeadlineExceededException If the deadline is passed
+     */
+    public static void applyDeadline(EntityManager entityManager) {
+        long left = InvocationContext.timeLeft(Long.MAX_VALUE);
+        if (left != Long.MAX_VALUE) {
+            // Hibernate rounds the query timeout to seconds, 0 meaning none
+            entityManager.setProperty("javax.persistence.query.timeout", (int) Math.min(Integer.MAX_VALUE, (left + 999) / 1000 * 1000));
+        }
+    }
+
     /*
      * Tell to JPA do not commit the current transaction
      */
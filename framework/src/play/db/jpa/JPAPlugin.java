@@ -373,6 +373,7 @@ public class JPAPlugin extends PlayPlugin {
         EntityManager manager = JPA.entityManagerFactory.createEntityManager();
         manager.setFlushMode(FlushModeType.COMMIT);
         manager.setProperty("org.hibernate.readOnly", readonly);
+        JPA.applyDeadline(manager);
         if (autoTxs) {
             manager.getTransaction().begin();
         }
@@ -15,7 +15,9 @@ import play.mvc.Scope.Params;
 public class JPQL {
 
     public EntityManager em() {
-        return JPA.em();
+        EntityManager em = JPA.em();
+        JPA.applyDeadline(em);
+        return em;
     }
 
     public long count(String entity) {
@@ -0,0 +1,59 @@
+package play.exceptions;
+
+/**
+ * The deadline of the invocation is passed: its client has probably given up, and the work should be aborted
+ */
+public class DeadlineExceededException extends PlayException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    @Override
+    public String getErrorTitle() {
+        return "Deadline exceeded";
+    }
+
+    @Override
+    public String getErrorDescription() {
+        return String.format("The request deadline is exceeded : <strong>%s</strong>", getMessage());
+    }
+
+    /**
+     * The exceptions of a query cancelled by its timeout (the JDBC one is not in Java 5)
+     */
+    static final String[] QUERY_TIMEOUTS = {"java.sql.SQLTimeoutException", "org.hibernate.QueryTimeoutException", "javax.persistence.QueryTimeoutException"};
+
+    /**
+     * @return true if the exception or one of its causes is a DeadlineExceededException
+     */
+    public static boolean isCause(Throwable e) {
+        return isCause(e, false);
+    }
+
+    /**
+     * @param deadline true if the invocation has a deadline: its queries timeouts are then the time left, and a
+     *            query timeout means the deadline is exceeded
+     * @return true if the exception or one of its causes is a DeadlineExceededException, or a query timeout
+     */
+    public static boolean isCause(Throwable e, boolean deadline) {
+        while (e != null) {
+            if (e instanceof DeadlineExceededException || (deadline && isQueryTimeout(e.getClass()))) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+
+    static boolean isQueryTimeout(Class<?> type) {
+        for (; type != null; type = type.getSuperclass()) {
+            for (String name : QUERY_TIMEOUTS) {
+                if (name.equals(type.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
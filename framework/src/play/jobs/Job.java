@@ -3,6 +3,7 @@ package play.jobs;
 import java.util.Date;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import play.Invoker;
@@ -13,6 +14,7 @@ import play.exceptions.JavaExecutionException;
 import play.exceptions.PlayException;
 import play.libs.F.Promise;
 import play.libs.Time;
+import play.utils.WheelTimer;
 
 import com.jamonapi.Monitor;
 import com.jamonapi.MonitorFactory;
@@ -86,19 +88,49 @@ public class Job<V> extends Invoker.Invocation implements Callable<V> {
      * @return the job completion
      */
     public Promise<V> in(int seconds) {
-        final Promise<V> smartFuture = new Promise<V>();
+        DelayedJob<V> delayed = new DelayedJob<V>(this, seconds);
+        JobsPlugin.delayedJobs.put(delayed, Boolean.TRUE);
+        delayed.future = WheelTimer.schedule(delayed, seconds, TimeUnit.SECONDS, JobsPlugin.executor);
+        return delayed.promise;
+    }
 
-        JobsPlugin.executor.schedule(new Callable<V>() {
+    /**
+     * A job started by {@link #in(int)}, waiting for its delay in the timer
+     */
+    static class DelayedJob<V> implements Callable<V> {
 
-            public V call() throws Exception {
-                V result =  Job.this.call();
-                smartFuture.invoke(result);
-                return result;
-            }
+        final Job<V> job;
+        final Promise<V> promise = new Promise<V>();
+        final long runAt;
+        volatile Future<V> future;
 
-        }, seconds, TimeUnit.SECONDS);
+        DelayedJob(Job<V> job, int seconds) {
+            this.job = job;
+            this.runAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        }
 
-        return smartFuture;
+        public V call() throws Exception {
+            JobsPlugin.delayedJobs.remove(this);
+            V result = job.call();
+            promise.invoke(result);
+            return result;
+        }
+
+        /**
+         * Remove the job from the timer
+         */
+        void cancel() {
+            JobsPlugin.delayedJobs.remove(this);
+            Future<V> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return job + " will run in " + Math.max(0, TimeUnit.MILLISECONDS.toSeconds(runAt - System.currentTimeMillis())) + " seconds";
+        }
     }
 
     /**
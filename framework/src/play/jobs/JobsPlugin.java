@@ -7,10 +7,11 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import play.Logger;
@@ -22,12 +23,16 @@ import play.libs.Expression;
 import play.libs.Time;
 import play.libs.Time.CronExpression;
 import play.utils.Java;
-import play.utils.PThreadFactory;
+import play.utils.VirtualThreadExecutor;
 
 public class JobsPlugin extends PlayPlugin {
 
     public static ScheduledThreadPoolExecutor executor = null;
     public static List<Job> scheduledJobs = null;
+    /**
+     * The jobs started by {@link Job#in(int)}, waiting for their delay in the timer
+     */
+    static final ConcurrentMap<Job.DelayedJob<?>, Boolean> delayedJobs = new ConcurrentHashMap<Job.DelayedJob<?>, Boolean>();
 
     @Override
     public String getStatus() {
@@ -81,14 +86,17 @@ public class JobsPlugin extends PlayPlugin {
                 out.println();
             }
         }
-        if (!executor.getQueue().isEmpty()) {
+        if (!executor.getQueue().isEmpty() || !delayedJobs.isEmpty()) {
             out.println();
             out.println("Waiting jobs:");
             out.println("~~~~~~~~~~~~~~~~~~~~~~~~~~~");
             for (Object o : executor.getQueue()) {
-                ScheduledFuture task = (ScheduledFuture)o;
+                ScheduledFuture task = (ScheduledFuture) VirtualThreadExecutor.unwrap(o);
                 out.println(Java.extractUnderlyingCallable((FutureTask)task) + " will run in " + task.getDelay(TimeUnit.SECONDS) + " seconds");        
             }
+            for (Job.DelayedJob<?> delayed : delayedJobs.keySet()) {
+                out.println(delayed);
+            }
         }
         return sw.toString();
     }
@@ -183,8 +191,7 @@ public class JobsPlugin extends PlayPlugin {
 
     @Override
     public void onApplicationStart() {
-        int core = Integer.parseInt(Play.configuration.getProperty("play.jobs.pool", "10"));
-        executor = new ScheduledThreadPoolExecutor(core, new PThreadFactory("jobs"), new ThreadPoolExecutor.AbortPolicy());
+        executor = VirtualThreadExecutor.create("jobs", "play.jobs.pool", "10");
     }
 
     public static <V> void scheduleForCRON(Job<V> job) {
@@ -254,6 +261,9 @@ public class JobsPlugin extends PlayPlugin {
             }
         }
         
+        for (Job.DelayedJob<?> delayed : delayedJobs.keySet()) {
+            delayed.cancel();
+        }
         executor.shutdownNow();
         executor.getQueue().clear();
     }
@@ -7,17 +7,18 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Iterator;
 import java.util.ListIterator;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import play.exceptions.UnexpectedException;
+import play.utils.WheelTimer;
 
 public class F {
 
@@ -99,6 +100,206 @@ public class F {
             }
         }
 
+        /**
+         * Transform the value of this promise, in the thread that redeems it
+         *
+         * @return The promise of the transformed value, or of the exception of this promise or of the function
+         */
+        public <R> Promise<R> map(Function<V, R> function) {
+            return map(function, null);
+        }
+
+        /**
+         * Transform the value of this promise
+         *
+         * @param executor The executor of the function, ie. <code>Invoker.executor</code> when it is long, or null to
+         * run it in the thread that redeems this promise
+         * @return The promise of the transformed value, or of the exception of this promise or of the function
+         */
+        public <R> Promise<R> map(final Function<V, R> function, Executor executor) {
+            final Promise<R> result = new Promise<R>();
+            onRedeem(new Callback<V>(result, executor) {
+
+                void apply(Promise<V> completed) throws Exception {
+                    result.invoke(function.apply(completed.result));
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Chain an asynchronous operation, ie. a web service call, to this promise, in the thread that redeems it
+         *
+         * @return The promise of the operation result, or of the exception of this promise or of the function
+         */
+        public <R> Promise<R> flatMap(Function<V, Promise<R>> function) {
+            return flatMap(function, null);
+        }
+
+        /**
+         * Chain an asynchronous operation, ie. a web service call, to this promise
+         *
+         * @param executor The executor of the function, or null to run it in the thread that redeems this promise
+         * @return The promise of the operation result, or of the exception of this promise or of the function
+         */
+        public <R> Promise<R> flatMap(final Function<V, Promise<R>> function, Executor executor) {
+            final Promise<R> result = new Promise<R>();
+            onRedeem(new Callback<V>(result, executor) {
+
+                void apply(Promise<V> completed) throws Exception {
+                    function.apply(completed.result).onRedeem(new Forward<R>(result));
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Replace the exception of this promise with a value, in the thread that redeems it
+         *
+         * @return The promise of the value of this promise, or of the function result if it failed
+         */
+        public Promise<V> recover(Function<Throwable, V> function) {
+            return recover(function, null);
+        }
+
+        /**
+         * Replace the exception of this promise with a value
+         *
+         * @param executor The executor of the function, or null to run it in the thread that redeems this promise
+         * @return The promise of the value of this promise, or of the function result if it failed
+         */
+        public Promise<V> recover(final Function<Throwable, V> function, Executor executor) {
+            final Promise<V> result = new Promise<V>();
+            onRedeem(new Callback<V>(result, executor) {
+
+                @Override
+                public void invoke(Promise<V> completed) {
+                    if (completed.exception == null) {
+                        result.invoke(completed.result);
+                    } else {
+                        schedule(completed);
+                    }
+                }
+
+                void apply(Promise<V> completed) throws Exception {
+                    result.invoke(function.apply(completed.exception));
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Combine the values of this promise and another one
+         *
+         * @return The promise of both values, or of the first exception
+         */
+        public <B> Promise<F.Tuple<V, B>> zip(final Promise<B> other) {
+            final Promise<F.Tuple<V, B>> result = new Promise<F.Tuple<V, B>>();
+            onRedeem(new Callback<V>(result, null) {
+
+                void apply(final Promise<V> first) {
+                    other.onRedeem(new Callback<B>(result, null) {
+
+                        void apply(Promise<B> second) {
+                            result.invoke(new F.Tuple<V, B>(first.result, second.result));
+                        }
+                    });
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Fail if this promise is not redeemed in time
+         *
+         * @return The promise of the value of this promise, or of a <code>TimeoutException</code> after the delay
+         */
+        public Promise<V> timeout(long delay, TimeUnit unit) {
+            final Promise<V> result = new Promise<V>();
+            final String message = "Promise not redeemed after " + delay + " " + unit.toString().toLowerCase();
+            final Future<?> timer = WheelTimer.schedule(new Runnable() {
+
+                public void run() {
+                    result.invokeWithException(new TimeoutException(message));
+                }
+            }, delay, unit, null);
+            onRedeem(new Forward<V>(result) {
+
+                @Override
+                public void invoke(Promise<V> completed) {
+                    timer.cancel(false);
+                    super.invoke(completed);
+                }
+            });
+            return result;
+        }
+
+        /**
+         * The callback of a combinator: it is also the task of its executor, and fails the result when this promise or
+         * the function fail
+         */
+        abstract static class Callback<V> implements F.Action<Promise<V>>, Runnable {
+
+            final Promise<?> target;
+            final Executor executor;
+            Promise<V> completed;
+
+            Callback(Promise<?> result, Executor executor) {
+                this.target = result;
+                this.executor = executor;
+            }
+
+            public void invoke(Promise<V> completed) {
+                if (completed.exception != null) {
+                    target.invokeWithException(completed.exception);
+                } else {
+                    schedule(completed);
+                }
+            }
+
+            /**
+             * Apply the function in the executor
+             */
+            void schedule(Promise<V> completed) {
+                this.completed = completed;
+                if (executor == null) {
+                    run();
+                    return;
+                }
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    target.invokeWithException(e);
+                }
+            }
+
+            public void run() {
+                try {
+                    apply(completed);
+                } catch (Throwable e) {
+                    target.invokeWithException(e);
+                }
+            }
+
+            abstract void apply(Promise<V> completed) throws Exception;
+        }
+
+        /**
+         * Redeem another promise with the value or the exception of this one
+         */
+        static class Forward<V> implements F.Action<Promise<V>> {
+
+            final Promise<V> result;
+
+            Forward(Promise<V> result) {
+                this.result = result;
+            }
+
+            public void invoke(Promise<V> completed) {
+                result.invokeWithResultOrException(completed.result, completed.exception);
+            }
+        }
+
         public static <T> Promise<List<T>> waitAll(final Promise<T>... promises) {
             return waitAll(Arrays.asList(promises));
         }
@@ -400,7 +601,6 @@ public class F {
 
     public static class Timeout extends Promise<Timeout> {
 
-        static Timer timer = new Timer("F.Timeout", true);
         final public String token;
         final public long delay;
 
@@ -420,13 +620,12 @@ public class F {
             this.delay = delay;
             this.token = token;
             final Timeout timeout = this;
-            timer.schedule(new TimerTask() {
+            WheelTimer.schedule(new Runnable() {
 
-                @Override
                 public void run() {
                     timeout.invoke(timeout);
                 }
-            }, delay);
+            }, delay, TimeUnit.MILLISECONDS, null);
         }
 
         @Override
@@ -646,6 +845,11 @@ public class F {
         void invoke(T result);
     }
 
+    public static interface Function<A, R> {
+
+        R apply(A value) throws Exception;
+    }
+
     public static abstract class Option<T> implements Iterable<T> {
 
         public abstract boolean isDefined();
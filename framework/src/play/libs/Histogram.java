@@ -0,0 +1,140 @@
+package play.libs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations, with a microsecond resolution.
+ * <p/>
+ * The durations are counted in buckets whose width grows with the duration: below 16 µs, each microsecond has its
+ * bucket, then each power of 2 is divided in 8 buckets. The percentiles are precise to 12.5%.
+ */
+public class Histogram {
+
+    static final int LINEAR = 16;
+    static final int SUB_BUCKETS = 8;
+    /**
+     * Longer durations are counted as this one, about 12 days
+     */
+    static final long MAX_MICROS = (1L << 40) - 1;
+    static final int BUCKETS = index(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration
+     *
+     * @param nanos The duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.min(Math.max(nanos / 1000, 0), MAX_MICROS);
+        counts.incrementAndGet(index(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return The number of durations recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The sum of the durations, in microseconds
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return The longest duration, in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get a percentile of the durations
+     *
+     * @param quantile The percentile between 0 and 1, ie. 0.99
+     * @return The duration in microseconds under which this part of the durations are, 0 if none is recorded
+     */
+    public long percentile(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Add the durations recorded by another histogram
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long hits = other.counts.get(i);
+            if (hits > 0) {
+                counts.addAndGet(i, hits);
+            }
+        }
+        count.addAndGet(other.getCount());
+        sum.addAndGet(other.getSum());
+        long micros = other.getMax();
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros)) {
+            current = max.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        int power = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = power - 3;
+        return LINEAR + (power - 4) * SUB_BUCKETS + (int) ((micros >> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * The longest duration of a bucket, in microseconds
+     */
+    static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int power = (index - LINEAR) / SUB_BUCKETS + 4;
+        int shift = power - 3;
+        long lower = (long) (SUB_BUCKETS + (index - LINEAR) % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,384 @@
+package play.libs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import play.mvc.Router;
+
+/**
+ * The time spent by the HTTP requests in each phase of their execution, and by route.
+ * <p/>
+ * The phases are timed with <code>System.nanoTime()</code> and recorded in lock-free {@link Histogram}s. They are
+ * exposed in the <code>/@status</code> page, and in the Prometheus text format at <code>/@metrics</code>.
+ */
+public class Metrics {
+
+    public enum Phase {
+
+        /**
+         * Decoding of the HTTP request
+         */
+        PARSE,
+        /**
+         * Wait for an invocation thread
+         */
+        QUEUE,
+        /**
+         * Search of the route and action
+         */
+        ROUTING,
+        /**
+         * Binding of the action parameters
+         */
+        BINDING,
+        /**
+         * Execution of the action, with its interceptors, including its binding and rendering
+         */
+        ACTION,
+        /**
+         * Rendering of a template
+         */
+        RENDER,
+        /**
+         * Writing of the response to the connection
+         */
+        WRITE;
+
+        final Histogram histogram = new Histogram();
+
+        public Histogram histogram() {
+            return histogram;
+        }
+
+        public String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    /**
+     * The requests of a route: their number by status class, those in progress, and their duration.
+     * <p/>
+     * The counters are striped by thread, so that the threads serving the same route do not contend on them.
+     */
+    public static class RouteStats {
+
+        static final int STRIPES = stripes();
+
+        public final String method;
+        public final String path;
+        public final String action;
+        /**
+         * The route definition, ie. <code>conf/routes:12</code>
+         */
+        public volatile String location;
+
+        final Stripe[] stripes = new Stripe[STRIPES];
+
+        static class Stripe {
+
+            final Histogram histogram = new Histogram();
+            /**
+             * The requests by status class, from 1xx to 5xx
+             */
+            final AtomicLongArray statuses = new AtomicLongArray(5);
+            /**
+             * Started minus completed requests: a stripe can be negative, as a request can complete in another
+             * thread
+             */
+            final AtomicLong inFlight = new AtomicLong();
+        }
+
+        RouteStats(Router.Route route) {
+            this.method = route.method;
+            this.path = route.path;
+            this.action = route.action;
+            this.location = location(route);
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        static int stripes() {
+            int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+            return Integer.highestOneBit(processors * 2 - 1);
+        }
+
+        static String location(Router.Route route) {
+            return route.routesFile + ":" + route.routesFileLine;
+        }
+
+        Stripe stripe() {
+            return stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+        }
+
+        /**
+         * A request of the route starts
+         *
+         * @return The start time to pass to {@link #stop(long, int)}
+         */
+        public long start() {
+            stripe().inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        /**
+         * A request of the route is complete
+         */
+        public void stop(long start, int status) {
+            Stripe stripe = stripe();
+            stripe.histogram.record(System.nanoTime() - start);
+            stripe.inFlight.decrementAndGet();
+            int statusClass = status / 100 - 1;
+            if (statusClass >= 0 && statusClass < 5) {
+                stripe.statuses.incrementAndGet(statusClass);
+            }
+        }
+
+        public long getInFlight() {
+            long inFlight = 0;
+            for (Stripe stripe : stripes) {
+                inFlight += stripe.inFlight.get();
+            }
+            return inFlight;
+        }
+
+        /**
+         * @param statusClass The status class, ie. 2 for 2xx
+         */
+        public long getCount(int statusClass) {
+            long count = 0;
+            for (Stripe stripe : stripes) {
+                count += stripe.statuses.get(statusClass - 1);
+            }
+            return count;
+        }
+
+        /**
+         * Get the durations recorded in all the stripes
+         */
+        public Histogram histogram() {
+            Histogram histogram = new Histogram();
+            for (Stripe stripe : stripes) {
+                histogram.add(stripe.histogram);
+            }
+            return histogram;
+        }
+
+        public String labels() {
+            return "route=\"" + escape(location) + "\",method=\"" + escape(method) + "\",path=\"" + escape(path) + "\",action=\"" + escape(action) + "\"";
+        }
+    }
+
+    /**
+     * The statistics of the routes, by method, path and action: they are kept when the routes are reloaded
+     */
+    static final ConcurrentMap<String, RouteStats> routes = new ConcurrentHashMap<String, RouteStats>();
+    /**
+     * The statistics of the current route instances
+     */
+    static final ConcurrentMap<Router.Route, RouteStats> byRoute = new ConcurrentHashMap<Router.Route, RouteStats>();
+
+    /**
+     * Get the statistics of a route
+     */
+    public static RouteStats route(Router.Route route) {
+        RouteStats stats = byRoute.get(route);
+        if (stats == null) {
+            String key = route.method + " " + route.path + " " + route.action;
+            stats = routes.get(key);
+            if (stats == null) {
+                RouteStats created = new RouteStats(route);
+                stats = routes.putIfAbsent(key, created);
+                if (stats == null) {
+                    stats = created;
+                }
+            }
+            // The route may have moved in the routes file
+            stats.location = RouteStats.location(route);
+            byRoute.put(route, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Forget the current route instances, as the routes have been reloaded
+     */
+    public static void routesReloaded() {
+        byRoute.clear();
+    }
+
+    /**
+     * Get the routes statistics, ordered by route definition
+     */
+    public static List<RouteStats> routes() {
+        List<RouteStats> list = new ArrayList<RouteStats>(routes.values());
+        Collections.sort(list, new Comparator<RouteStats>() {
+
+            public int compare(RouteStats a, RouteStats b) {
+                return a.location.compareTo(b.location);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Record the duration of a phase
+     *
+     * @param start The <code>System.nanoTime()</code> when the phase started
+     */
+    public static void record(Phase phase, long start) {
+        phase.histogram.record(System.nanoTime() - start);
+    }
+
+    public static void reset() {
+        for (Phase phase : Phase.values()) {
+            phase.histogram.reset();
+        }
+        routes.clear();
+        byRoute.clear();
+    }
+
+    /**
+     * Get the phase durations, in milliseconds
+     */
+    public static JsonObject toJson() {
+        JsonObject phases = new JsonObject();
+        for (Phase phase : Phase.values()) {
+            phases.add(phase.label(), toJson(phase.histogram));
+        }
+        return phases;
+    }
+
+    public static JsonObject toJson(Histogram histogram) {
+        JsonObject o = new JsonObject();
+        o.addProperty("count", histogram.getCount());
+        o.addProperty("p50", histogram.percentile(0.5) / 1000.0);
+        o.addProperty("p95", histogram.percentile(0.95) / 1000.0);
+        o.addProperty("p99", histogram.percentile(0.99) / 1000.0);
+        o.addProperty("max", histogram.getMax() / 1000.0);
+        return o;
+    }
+
+    /**
+     * Get the route statistics, with their durations in milliseconds
+     */
+    public static JsonArray routesToJson() {
+        JsonArray array = new JsonArray();
+        for (RouteStats stats : routes()) {
+            JsonObject o = toJson(stats.histogram());
+            o.addProperty("route", stats.location);
+            o.addProperty("method", stats.method);
+            o.addProperty("path", stats.path);
+            o.addProperty("action", stats.action);
+            o.addProperty("inFlight", stats.getInFlight());
+            for (int statusClass = 1; statusClass <= 5; statusClass++) {
+                o.addProperty(statusClass + "xx", stats.getCount(statusClass));
+            }
+            array.add(o);
+        }
+        return array;
+    }
+
+    /**
+     * Get the route statistics as a text, one line by route
+     */
+    public static String routesToText() {
+        StringBuilder text = new StringBuilder();
+        for (RouteStats stats : routes()) {
+            Histogram histogram = stats.histogram();
+            text.append(String.format(Locale.ENGLISH, "%s %s %s %s -> %8d hits; %4d in flight; %8d 2xx; %8d 3xx; %8d 4xx; %8d 5xx; %8.1f p50; %8.1f p99;%n",
+                    stats.location, stats.method, stats.path, stats.action, histogram.getCount(), stats.getInFlight(),
+                    stats.getCount(2), stats.getCount(3), stats.getCount(4), stats.getCount(5),
+                    histogram.percentile(0.5) / 1000.0, histogram.percentile(0.99) / 1000.0));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Get the phase durations as a text, one line by phase
+     */
+    public static String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = phase.histogram;
+            text.append(String.format(Locale.ENGLISH, "%-8s -> %8d hits; %8.1f p50; %8.1f p95; %8.1f p99; %8.1f max;%n", phase.label(), histogram.getCount(),
+                    histogram.percentile(0.5) / 1000.0, histogram.percentile(0.95) / 1000.0, histogram.percentile(0.99) / 1000.0, histogram.getMax() / 1000.0));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Get the phase durations in the Prometheus text exposition format, in seconds
+     */
+    public static String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP play_request_phase_seconds Time spent by the HTTP requests in each phase\n");
+        text.append("# TYPE play_request_phase_seconds summary\n");
+        for (Phase phase : Phase.values()) {
+            appendSummary(text, "play_request_phase_seconds", "phase=\"" + phase.label() + "\"", phase.histogram);
+        }
+        List<RouteStats> routes = routes();
+        if (routes.isEmpty()) {
+            return text.toString();
+        }
+        text.append("# HELP play_route_requests_total Completed HTTP requests by route and status class\n");
+        text.append("# TYPE play_route_requests_total counter\n");
+        for (RouteStats stats : routes) {
+            for (int statusClass = 1; statusClass <= 5; statusClass++) {
+                text.append("play_route_requests_total{").append(stats.labels()).append(",status=\"").append(statusClass).append("xx\"} ");
+                text.append(stats.getCount(statusClass)).append('\n');
+            }
+        }
+        text.append("# HELP play_route_in_flight HTTP requests in progress by route\n");
+        text.append("# TYPE play_route_in_flight gauge\n");
+        for (RouteStats stats : routes) {
+            text.append("play_route_in_flight{").append(stats.labels()).append("} ").append(stats.getInFlight()).append('\n');
+        }
+        text.append("# HELP play_route_seconds Duration of the HTTP requests by route, from routing to response\n");
+        text.append("# TYPE play_route_seconds summary\n");
+        for (RouteStats stats : routes) {
+            appendSummary(text, "play_route_seconds", stats.labels(), stats.histogram());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Escape a Prometheus label value
+     */
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Append the samples of a summary
+     *
+     * @param labels The labels of the samples, ie. <code>phase="parse"</code>
+     */
+    public static void appendSummary(StringBuilder text, String name, String labels, Histogram histogram) {
+        for (double quantile : QUANTILES) {
+            text.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ");
+            text.append(seconds(histogram.percentile(quantile))).append('\n');
+        }
+        text.append(name).append("_sum{").append(labels).append("} ").append(seconds(histogram.getSum())).append('\n');
+        text.append(name).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+    }
+
+    static String seconds(long micros) {
+        return String.format(Locale.ENGLISH, "%.6f", micros / 1000000.0);
+    }
+}
@@ -18,6 +18,7 @@ import oauth.signpost.http.HttpRequest;
 
 import org.apache.commons.lang.NotImplementedException;
 
+import play.Invoker.InvocationContext;
 import play.Logger;
 import play.Play;
 import play.libs.F.Promise;
@@ -376,7 +377,7 @@ public class WSAsync implements WSImpl {
             }
             builder.setFollowRedirects(this.followRedirects);
             PerRequestConfig perRequestConfig = new PerRequestConfig();
-            perRequestConfig.setRequestTimeoutInMs(this.timeout * 1000);
+            perRequestConfig.setRequestTimeoutInMs((int) InvocationContext.timeLeft(this.timeout * 1000L));
             builder.setPerRequestConfig(perRequestConfig);
             return builder;
         }
@@ -2,6 +2,7 @@ package play.libs.ws;
 
 import oauth.signpost.OAuthConsumer;
 import oauth.signpost.basic.DefaultOAuthConsumer;
+import play.Invoker.InvocationContext;
 import play.Logger;
 import play.libs.IO;
 import play.libs.WS.HttpResponse;
@@ -172,7 +173,7 @@ public class WSUrlFetch implements WSImpl {
                 connection.setRequestMethod(method);
                 connection.setDoInput(true);
                 connection.setInstanceFollowRedirects(this.followRedirects);
-                connection.setReadTimeout(this.timeout * 1000);
+                connection.setReadTimeout((int) InvocationContext.timeLeft(this.timeout * 1000L));
                 for (String key : this.headers.keySet()) {
                     connection.setRequestProperty(key, headers.get(key));
                 }
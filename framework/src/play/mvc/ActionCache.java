@@ -0,0 +1,227 @@
+package play.mvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import play.Logger;
+import play.Play;
+import play.cache.Cache;
+import play.cache.CacheFor;
+import play.jobs.Job;
+import play.jobs.JobsPlugin;
+import play.libs.Time;
+import play.mvc.results.Result;
+
+/**
+ * The cached result of a @CacheFor action, for the current request.
+ * <p/>
+ * On a miss, the first request for a key runs the action while the concurrent requests for the same key wait for
+ * its result, so that an expired page does not run the action once per waiting request. They wait for a short time
+ * only (<code>play.cacheFor.wait</code>), as each of them holds an invoker thread: past it, they run the action too.
+ * With a stale window, the expired result is served during that window while a background job replays the request
+ * to refresh it.
+ */
+class ActionCache {
+
+    /**
+     * Request arg set on the requests replayed to refresh a stale result
+     */
+    static final String REFRESH = "__cacheForRefresh";
+
+    /**
+     * The keys being computed on this node
+     */
+    static final ConcurrentMap<String, CountDownLatch> computing = new ConcurrentHashMap<String, CountDownLatch>();
+
+    final String key;
+    final CacheFor cacheFor;
+    /**
+     * Held while this request computes the result
+     */
+    CountDownLatch latch;
+
+    /**
+     * A result stored with a stale window
+     */
+    static class CachedResult implements Serializable {
+
+        final Result result;
+        final long freshUntil;
+
+        CachedResult(Result result, long freshUntil) {
+            this.result = result;
+            this.freshUntil = freshUntil;
+        }
+    }
+
+    ActionCache(Http.Request request, CacheFor cacheFor) {
+        this.cacheFor = cacheFor;
+        String id = cacheFor.id();
+        if ("".equals(id)) {
+            id = "urlcache:" + request.url + request.querystring;
+        }
+        if (cacheFor.headers().length > 0 || cacheFor.session().length > 0) {
+            StringBuilder vary = new StringBuilder(id);
+            for (String name : cacheFor.headers()) {
+                Http.Header header = request.headers.get(name.toLowerCase());
+                vary.append("|").append(name).append("=").append(header == null ? "" : header.values);
+            }
+            for (String name : cacheFor.session()) {
+                String value = Scope.Session.current().get(name);
+                vary.append("|session.").append(name).append("=").append(value == null ? "" : value);
+            }
+            id = vary.toString();
+        }
+        this.key = id;
+    }
+
+    /**
+     * Get the cache of an action, if the request can be served from the cache
+     */
+    static ActionCache get(Http.Request request, Method actionMethod) {
+        if ((request.method.equals("GET") || request.method.equals("HEAD")) && actionMethod.isAnnotationPresent(CacheFor.class)) {
+            return new ActionCache(request, actionMethod.getAnnotation(CacheFor.class));
+        }
+        return null;
+    }
+
+    /**
+     * Get the cached result, waiting for it if another request is computing it.
+     *
+     * @return null if this request has to compute it, see {@link #store} and {@link #release}
+     */
+    Result lookup(Http.Request request) throws InterruptedException {
+        Object refresh = request.args.get(REFRESH);
+        if (refresh != null) {
+            // Replayed by the refresh job, which holds the latch
+            return null;
+        }
+        long deadline = 0;
+        while (true) {
+            Object cached = Cache.get(key);
+            if (cached instanceof CachedResult) {
+                CachedResult entry = (CachedResult) cached;
+                if (entry.freshUntil < System.currentTimeMillis()) {
+                    CountDownLatch refreshing = new CountDownLatch(1);
+                    if (computing.putIfAbsent(key, refreshing) == null) {
+                        if (JobsPlugin.executor == null) {
+                            // No jobs, refresh it now
+                            latch = refreshing;
+                            return null;
+                        }
+                        new Refresh(replay(request, refreshing), key, refreshing).now();
+                    }
+                }
+                return entry.result;
+            }
+            if (cached != null) {
+                return (Result) cached;
+            }
+            CountDownLatch mine = new CountDownLatch(1);
+            CountDownLatch running = computing.putIfAbsent(key, mine);
+            if (running == null) {
+                latch = mine;
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (deadline == 0) {
+                long wait = Time.parseDuration(Play.configuration.getProperty("play.cacheFor.wait", "1s")) * 1000L;
+                if (wait == 0) {
+                    // Compute it too rather than holding an invoker thread
+                    return null;
+                }
+                deadline = now + wait;
+            }
+            if (now >= deadline || !running.await(deadline - now, TimeUnit.MILLISECONDS)) {
+                Logger.warn("Timeout waiting for the cached result of %s, computing it again", request.action);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Cache the action result
+     */
+    void store(Result result) {
+        if (cacheFor.stale().length() > 0) {
+            int fresh = Time.parseDuration(cacheFor.value());
+            int stale = Time.parseDuration(cacheFor.stale());
+            Cache.set(key, new CachedResult(result, System.currentTimeMillis() + fresh * 1000L), (fresh + stale) + "s");
+        } else {
+            Cache.set(key, result, cacheFor.value());
+        }
+    }
+
+    /**
+     * Let the waiting requests read the computed result. Must be called once the action has been invoked.
+     */
+    void release() {
+        if (latch != null) {
+            release(key, latch);
+            latch = null;
+        }
+    }
+
+    static void release(String key, CountDownLatch latch) {
+        computing.remove(key, latch);
+        latch.countDown();
+    }
+
+    /**
+     * Copy a request to invoke it again, outside of its HTTP exchange
+     */
+    static Http.Request replay(Http.Request request, CountDownLatch latch) {
+        Map<String, Http.Header> headers = new HashMap<String, Http.Header>(request.headers);
+        // The proxy headers have already been applied to the request
+        headers.remove("x-forwarded-for");
+        Http.Request copy = Http.Request.createRequest(request.remoteAddress, request.method, request.path,
+                request.querystring, request.contentType, new ByteArrayInputStream(new byte[0]), request.url,
+                request.host, request.isLoopback, request.port, request.domain, request.secure, headers,
+                new HashMap<String, Http.Cookie>(request.cookies));
+        copy.encoding = request.encoding;
+        copy.args.put(REFRESH, latch);
+        return copy;
+    }
+
+    /**
+     * Replay a request to refresh its stale cached result.
+     */
+    static class Refresh extends Job<Object> {
+
+        final Http.Request request;
+        final String key;
+        final CountDownLatch latch;
+
+        Refresh(Http.Request request, String key, CountDownLatch latch) {
+            this.request = request;
+            this.key = key;
+            this.latch = latch;
+        }
+
+        @Override
+        public void doJob() throws Exception {
+            Http.Response response = new Http.Response();
+            response.out = new ByteArrayOutputStream();
+            ActionInvoker.invoke(request, response);
+        }
+
+        @Override
+        public void _finally() {
+            super._finally();
+            release(key, latch);
+        }
+
+        @Override
+        public String toString() {
+            return "Refresh " + key;
+        }
+    }
+}
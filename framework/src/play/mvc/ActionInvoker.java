@@ -12,7 +12,6 @@ import java.util.*;
 import org.apache.commons.lang.StringUtils;
 import play.Logger;
 import play.Play;
-import play.cache.CacheFor;
 import play.classloading.enhancers.ControllersEnhancer.ControllerInstrumentation;
 import play.classloading.enhancers.ControllersEnhancer.ControllerSupport;
 import play.data.binding.Binder;
@@ -26,6 +25,7 @@ import play.exceptions.JavaExecutionException;
 import play.exceptions.PlayException;
 import play.exceptions.UnexpectedException;
 import play.i18n.Lang;
+import play.libs.Metrics;
 import play.mvc.Http.Request;
 import play.mvc.Router.Route;
 import play.mvc.results.NoResult;
@@ -71,6 +71,8 @@ public class ActionInvoker {
             return;
         }
 
+        long start = System.nanoTime();
+
         // Route and resolve format if not already done
         if (request.action == null) {
             Play.pluginCollection.routeRequest(request);
@@ -81,13 +83,12 @@ public class ActionInvoker {
 
         // Find the action method
         try {
-            Method actionMethod = null;
-            Object[] ca = getActionMethod(request.action);
-            actionMethod = (Method) ca[1];
-            request.controller = ((Class) ca[0]).getName().substring(12).replace("$", "");
-            request.controllerClass = ((Class) ca[0]);
+            ActionRegistry.Entry entry = ActionRegistry.get(request.action);
+            Method actionMethod = entry.method.method;
+            request.controller = entry.controller;
+            request.controllerClass = (Class) entry.controllerClass;
             request.actionMethod = actionMethod.getName();
-            request.action = request.controller + "." + request.actionMethod;
+            request.action = entry.action;
             request.invokedMethod = actionMethod;
 
             if (Logger.isTraceEnabled()) {
@@ -95,6 +96,7 @@ public class ActionInvoker {
             }
 
             request.resolved = true;
+            Metrics.record(Metrics.Phase.ROUTING, start);
 
         } catch (ActionNotFoundException e) {
             Logger.error(e, "%s action not found", e.getAction());
@@ -135,6 +137,7 @@ public class ActionInvoker {
 
             // Monitoring
             monitor = MonitorFactory.start(request.action + "()");
+            long start = System.nanoTime();
 
             // 3. Invoke the action
             try {
@@ -144,15 +147,11 @@ public class ActionInvoker {
                 // Action
 
                 Result actionResult = null;
-                String cacheKey = null;
 
                 // Check the cache (only for GET or HEAD)
-                if ((request.method.equals("GET") || request.method.equals("HEAD")) && actionMethod.isAnnotationPresent(CacheFor.class)) {
-                    cacheKey = actionMethod.getAnnotation(CacheFor.class).id();
-                    if ("".equals(cacheKey)) {
-                        cacheKey = "urlcache:" + request.url + request.querystring;
-                    }
-                    actionResult = (Result) play.cache.Cache.get(cacheKey);
+                ActionCache cache = ActionCache.get(request, actionMethod);
+                if (cache != null) {
+                    actionResult = cache.lookup(request);
                 }
 
                 if (actionResult == null) {
@@ -162,40 +161,27 @@ public class ActionInvoker {
                     } catch(Result result) {
                         actionResult = result;
                         // Cache it if needed
-                        if (cacheKey != null) {
-                            play.cache.Cache.set(cacheKey, actionResult, actionMethod.getAnnotation(CacheFor.class).value());
+                        if (cache != null) {
+                            cache.store(actionResult);
                         }
                     } catch (InvocationTargetException ex) {
                         // It's a Result ? (expected)
                         if (ex.getTargetException() instanceof Result) {
                             actionResult = (Result) ex.getTargetException();
                             // Cache it if needed
-                            if (cacheKey != null) {
-                                play.cache.Cache.set(cacheKey, actionResult, actionMethod.getAnnotation(CacheFor.class).value());
+                            if (cache != null) {
+                                cache.store(actionResult);
                             }
 
                         } else {
                             // @Catch
                             Object[] args = new Object[]{ex.getTargetException()};
-                            List<Method> catches = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Catch.class);
-                            Collections.sort(catches, new Comparator<Method>() {
-
-                                public int compare(Method m1, Method m2) {
-                                    Catch catch1 = m1.getAnnotation(Catch.class);
-                                    Catch catch2 = m2.getAnnotation(Catch.class);
-                                    return catch1.priority() - catch2.priority();
-                                }
-                            });
+                            InterceptorChain chain = InterceptorChain.get(Controller.getControllerClass(), request.action);
                             ControllerInstrumentation.stopActionCall();
-                            for (Method mCatch : catches) {
-                                Class[] exceptions = mCatch.getAnnotation(Catch.class).value();
-                                if (exceptions.length == 0) {
-                                    exceptions = new Class[]{Exception.class};
-                                }
-                                for (Class exception : exceptions) {
+                            for (int i = 0; i < chain.catches.length; i++) {
+                                for (Class<?> exception : chain.catchExceptions[i]) {
                                     if (exception.isInstance(args[0])) {
-                                        mCatch.setAccessible(true);
-                                        inferResult(invokeControllerMethod(mCatch, args));
+                                        inferResult(invokeControllerMethod(chain.catches[i], args));
                                         break;
                                     }
                                 }
@@ -203,6 +189,10 @@ public class ActionInvoker {
 
                             throw ex;
                         }
+                    } finally {
+                        if (cache != null) {
+                            cache.release();
+                        }
                     }
                 }
 
@@ -211,6 +201,7 @@ public class ActionInvoker {
 
                 monitor.stop();
                 monitor = null;
+                Metrics.record(Metrics.Phase.ACTION, start);
 
                 // OK, re-throw the original action result
                 if (actionResult != null) {
@@ -269,106 +260,19 @@ public class ActionInvoker {
         }
     }
 
-    private static boolean isActionMethod(Method method) {
-        if (method.isAnnotationPresent(Before.class)) {
-            return false;
-        }
-        if (method.isAnnotationPresent(After.class)) {
-            return false;
-        }
-        if (method.isAnnotationPresent(Finally.class)) {
-            return false;
-        }
-        if (method.isAnnotationPresent(Catch.class)) {
-            return false;
-        }
-        if (method.isAnnotationPresent(Util.class)) {
-            return false;
-        }
-        return true;
-    }
-
     private static void handleBefores(Http.Request request) throws Exception {
-        List<Method> befores = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Before.class);
-        Collections.sort(befores, new Comparator<Method>() {
-
-            public int compare(Method m1, Method m2) {
-                Before before1 = m1.getAnnotation(Before.class);
-                Before before2 = m2.getAnnotation(Before.class);
-                return before1.priority() - before2.priority();
-            }
-        });
+        InterceptorChain chain = InterceptorChain.get(Controller.getControllerClass(), request.action);
         ControllerInstrumentation.stopActionCall();
-        for (Method before : befores) {
-            String[] unless = before.getAnnotation(Before.class).unless();
-            String[] only = before.getAnnotation(Before.class).only();
-            boolean skip = false;
-            for (String un : only) {
-                if (!un.contains(".")) {
-                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = false;
-                    break;
-                } else {
-                    skip = true;
-                }
-            }
-            for (String un : unless) {
-                if (!un.contains(".")) {
-                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = true;
-                    break;
-                }
-            }
-            if (!skip) {
-                before.setAccessible(true);
-                inferResult(invokeControllerMethod(before));
-            }
+        for (Method before : chain.befores) {
+            inferResult(invokeControllerMethod(before));
         }
     }
 
     private static void handleAfters(Http.Request request) throws Exception {
-        List<Method> afters = Java.findAllAnnotatedMethods(Controller.getControllerClass(), After.class);
-        Collections.sort(afters, new Comparator<Method>() {
-
-            public int compare(Method m1, Method m2) {
-                After after1 = m1.getAnnotation(After.class);
-                After after2 = m2.getAnnotation(After.class);
-                return after1.priority() - after2.priority();
-            }
-        });
+        InterceptorChain chain = InterceptorChain.get(Controller.getControllerClass(), request.action);
         ControllerInstrumentation.stopActionCall();
-        for (Method after : afters) {
-            String[] unless = after.getAnnotation(After.class).unless();
-            String[] only = after.getAnnotation(After.class).only();
-            boolean skip = false;
-            for (String un : only) {
-                if (!un.contains(".")) {
-                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = false;
-                    break;
-                } else {
-                    skip = true;
-                }
-            }
-            for (String un : unless) {
-                if (!un.contains(".")) {
-                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = true;
-                    break;
-                }
-            }
-            if (!skip) {
-                after.setAccessible(true);
-                inferResult(invokeControllerMethod(after));
-            }
+        for (Method after : chain.afters) {
+            inferResult(invokeControllerMethod(after));
         }
     }
 
@@ -387,52 +291,15 @@ public class ActionInvoker {
         }
 
         try {
-            List<Method> allFinally = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Finally.class);
-            Collections.sort(allFinally, new Comparator<Method>() {
-
-                public int compare(Method m1, Method m2) {
-                    Finally finally1 = m1.getAnnotation(Finally.class);
-                    Finally finally2 = m2.getAnnotation(Finally.class);
-                    return finally1.priority() - finally2.priority();
-                }
-            });
+            InterceptorChain chain = InterceptorChain.get(Controller.getControllerClass(), request.action);
             ControllerInstrumentation.stopActionCall();
-            for (Method aFinally : allFinally) {
-                String[] unless = aFinally.getAnnotation(Finally.class).unless();
-                String[] only = aFinally.getAnnotation(Finally.class).only();
-                boolean skip = false;
-                for (String un : only) {
-                    if (!un.contains(".")) {
-                        un = aFinally.getDeclaringClass().getName().substring(12) + "." + un;
-                    }
-                    if (un.equals(request.action)) {
-                        skip = false;
-                        break;
-                    } else {
-                        skip = true;
-                    }
-                }
-                for (String un : unless) {
-                    if (!un.contains(".")) {
-                        un = aFinally.getDeclaringClass().getName().substring(12) + "." + un;
-                    }
-                    if (un.equals(request.action)) {
-                        skip = true;
-                        break;
-                    }
-                }
-                if (!skip) {
-                    aFinally.setAccessible(true);
-
-                    //check if method accepts Throwable as only parameter
-                    Class[] parameterTypes = aFinally.getParameterTypes();
-                    if (parameterTypes.length == 1 && parameterTypes[0] == Throwable.class) {
-                        //invoking @Finally method with caughtException as parameter
-                        invokeControllerMethod(aFinally, new Object[]{caughtException});
-                    } else {
-                        //invoce @Finally-method the regular way without caughtException
-                        invokeControllerMethod(aFinally, null);
-                    }
+            for (int i = 0; i < chain.finallies.length; i++) {
+                if (chain.finallyWithThrowable[i]) {
+                    //invoking @Finally method with caughtException as parameter
+                    invokeControllerMethod(chain.finallies[i], new Object[]{caughtException});
+                } else {
+                    //invoce @Finally-method the regular way without caughtException
+                    invokeControllerMethod(chain.finallies[i], null);
                 }
             }
         } catch (InvocationTargetException ex) {
@@ -480,16 +347,17 @@ public class ActionInvoker {
     }
 
     public static Object invokeControllerMethod(Method method, Object[] forceArgs) throws Exception {
-        if (Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().getName().matches("^controllers\\..*\\$class$")) {
-            return invoke(method, null, forceArgs == null ? getActionMethodArgs(method, null) : forceArgs);
-        } else if (Modifier.isStatic(method.getModifiers())) {
-            Object[] args = getActionMethodArgs(method, null);
+        ActionRegistry.ControllerMethod controllerMethod = ActionRegistry.method(method);
+        if (controllerMethod.kind == ActionRegistry.ControllerMethod.STATIC) {
+            return invoke(controllerMethod, null, forceArgs == null ? getActionMethodArgs(controllerMethod, null) : forceArgs);
+        } else if (controllerMethod.kind == ActionRegistry.ControllerMethod.SCALA_TRAIT) {
+            Object[] args = getActionMethodArgs(controllerMethod, null);
             args[0] = Http.Request.current().controllerClass.getDeclaredField("MODULE$").get(null);
-            return invoke(method, null, args);
+            return invoke(controllerMethod, null, args);
         } else {
             Object instance = null;
             try {
-                instance = method.getDeclaringClass().getDeclaredField("MODULE$").get(null);
+                instance = controllerMethod.module();
             } catch (Exception e) {
                 Annotation[] annotations = method.getDeclaredAnnotations();
                 String annotation = Utils.getSimpleNames(annotations);
@@ -499,15 +367,19 @@ public class ActionInvoker {
                 // TODO: Find a better error report
                 throw new ActionNotFoundException(Http.Request.current().action, e);
             }
-            return invoke(method, instance, forceArgs == null ? getActionMethodArgs(method, instance) : forceArgs);
+            return invoke(controllerMethod, instance, forceArgs == null ? getActionMethodArgs(controllerMethod, instance) : forceArgs);
         }
     }
 
     static Object invoke(Method method, Object instance, Object[] realArgs) throws Exception {
-        if(isActionMethod(method)) {
-            return invokeWithContinuation(method, instance, realArgs);
+        return invoke(ActionRegistry.method(method), instance, realArgs);
+    }
+
+    static Object invoke(ActionRegistry.ControllerMethod controllerMethod, Object instance, Object[] realArgs) throws Exception {
+        if (controllerMethod.action) {
+            return invokeWithContinuation(controllerMethod.method, instance, realArgs);
         } else {
-            return method.invoke(instance, realArgs);
+            return controllerMethod.method.invoke(instance, realArgs);
         }
     }
     static final String C = "__continuation";
@@ -619,11 +491,12 @@ public class ActionInvoker {
 
 
     public static Object[] getActionMethodArgs(Method method, Object o) throws Exception {
-        String[] paramsNames = Java.parameterNames(method);
-        if (paramsNames == null && method.getParameterTypes().length > 0) {
-            throw new UnexpectedException("Parameter names not found for method " + method);
-        }
+        return getActionMethodArgs(ActionRegistry.method(method), o);
+    }
 
+    static Object[] getActionMethodArgs(ActionRegistry.ControllerMethod controllerMethod, Object o) throws Exception {
+        Method method = controllerMethod.method;
+        String[] paramsNames = controllerMethod.parameterNames();
 
         // Check if we have already performed the bind operation
         Object[] rArgs = CachedBoundActionMethodArgs.current().retrieveActionMethodArgs(method);
@@ -633,31 +506,36 @@ public class ActionInvoker {
             return rArgs;
         }
 
-        rArgs = new Object[method.getParameterTypes().length];
-        for (int i = 0; i < method.getParameterTypes().length; i++) {
+        long start = System.nanoTime();
+        rArgs = new Object[controllerMethod.parameterTypes.length];
+        for (int i = 0; i < controllerMethod.parameterTypes.length; i++) {
 
-            Class<?> type = method.getParameterTypes()[i];
             Map<String, String[]> params = new HashMap<String, String[]> ();
 
             // In case of simple params, we don't want to parse the body.
-            if (type.equals(String.class) || Number.class.isAssignableFrom(type) || type.isPrimitive()) {
+            if (controllerMethod.simple[i]) {
                 params.put(paramsNames[i], Scope.Params.current().getAll(paramsNames[i]));
             } else {
                 params.putAll(Scope.Params.current().all());
             }
-            Logger.trace("getActionMethodArgs name [" + paramsNames[i] + "] annotation [" + Utils.join(method.getParameterAnnotations()[i], " ") + "]");
+            if (Logger.isTraceEnabled()) {
+                Logger.trace("getActionMethodArgs name [" + paramsNames[i] + "] annotation [" + Utils.join(controllerMethod.parameterAnnotations[i], " ") + "]");
+            }
 
             RootParamNode root = ParamNode.convert(params);
             rArgs[i] = Binder.bind(
                         root,
                         paramsNames[i],
-                        method.getParameterTypes()[i],
-                        method.getGenericParameterTypes()[i],
-                        method.getParameterAnnotations()[i],
+                        controllerMethod.parameterTypes[i],
+                        controllerMethod.genericParameterTypes[i],
+                        controllerMethod.parameterAnnotations[i],
                         new Binder.MethodAndParamInfo(o, method, i + 1));
         }
 
         CachedBoundActionMethodArgs.current().storeActionMethodArgs(method, rArgs);
+        if (rArgs.length > 0) {
+            Metrics.record(Metrics.Phase.BINDING, start);
+        }
         return rArgs;
     }
 
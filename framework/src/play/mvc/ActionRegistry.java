@@ -0,0 +1,318 @@
+package play.mvc;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import play.Logger;
+import play.Play;
+import play.classloading.ApplicationClassloaderState;
+import play.classloading.enhancers.ControllersEnhancer.ControllerSupport;
+import play.exceptions.UnexpectedException;
+import play.utils.Java;
+
+/**
+ * The application actions, resolved once.
+ * <p/>
+ * Maps an action name, as found by the router, to its controller class and method. It also keeps, for every
+ * controller method invoked (actions and interceptors), what is needed to bind its arguments and invoke it.
+ * Everything is dropped when the application classes change.
+ */
+public class ActionRegistry {
+
+    /**
+     * The registry of the current application classes, replaced as a whole when they change or are registered again.
+     */
+    static volatile Registry registry = new Registry(null, new ConcurrentHashMap<Method, ControllerMethod>());
+
+    static class Registry {
+
+        final ApplicationClassloaderState state;
+        final Map<String, Entry> actions = new ConcurrentHashMap<String, Entry>();
+        final Map<Method, ControllerMethod> methods;
+        /**
+         * True if some registered action has a streamed body, and the request actions can be found from their route
+         */
+        boolean streamedBodies;
+
+        Registry(ApplicationClassloaderState state, Map<Method, ControllerMethod> methods) {
+            this.state = state;
+            this.methods = methods;
+        }
+    }
+
+    /**
+     * A resolved action.
+     */
+    public static class Entry {
+
+        /**
+         * The controller class
+         */
+        public final Class<?> controllerClass;
+        /**
+         * The controller name, ie. Application
+         */
+        public final String controller;
+        /**
+         * The action name, ie. Application.index
+         */
+        public final String action;
+        public final ControllerMethod method;
+
+        Entry(Class<?> controllerClass, Method method) {
+            this.controllerClass = controllerClass;
+            this.controller = controllerClass.getName().substring(12).replace("$", "");
+            this.action = controller + "." + method.getName();
+            this.method = method(method);
+        }
+
+        @Override
+        public String toString() {
+            return action + " -> " + method;
+        }
+    }
+
+    /**
+     * A controller method, action or interceptor, with its binding metadata.
+     */
+    public static class ControllerMethod {
+
+        /**
+         * A static Java method
+         */
+        static final int STATIC = 0;
+        /**
+         * A static method of a Scala trait implementation, taking the controller object as first argument
+         */
+        static final int SCALA_TRAIT = 1;
+        /**
+         * A method of a Scala object
+         */
+        static final int SCALA_OBJECT = 2;
+
+        public final Method method;
+        final int kind;
+        /**
+         * False for interceptors and @Util methods
+         */
+        final boolean action;
+        final Class<?>[] parameterTypes;
+        final Type[] genericParameterTypes;
+        final Annotation[][] parameterAnnotations;
+        /**
+         * True for the parameters that are bound from their own param only (no need to parse the whole body)
+         */
+        final boolean[] simple;
+        volatile String[] parameterNames;
+        volatile Field module;
+
+        ControllerMethod(Method method) {
+            this.method = method;
+            if (Modifier.isStatic(method.getModifiers())) {
+                kind = method.getDeclaringClass().getName().matches("^controllers\\..*\\$class$") ? SCALA_TRAIT : STATIC;
+            } else {
+                kind = SCALA_OBJECT;
+            }
+            action = !method.isAnnotationPresent(Before.class) && !method.isAnnotationPresent(After.class)
+                    && !method.isAnnotationPresent(Finally.class) && !method.isAnnotationPresent(Catch.class)
+                    && !method.isAnnotationPresent(Util.class);
+            parameterTypes = method.getParameterTypes();
+            genericParameterTypes = method.getGenericParameterTypes();
+            parameterAnnotations = method.getParameterAnnotations();
+            simple = new boolean[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Class<?> type = parameterTypes[i];
+                simple[i] = type.equals(String.class) || Number.class.isAssignableFrom(type) || type.isPrimitive();
+            }
+        }
+
+        /**
+         * Get the parameter names, as recorded by the enhancer
+         */
+        public String[] parameterNames() throws Exception {
+            if (parameterNames == null) {
+                String[] names = Java.parameterNames(method);
+                if (names == null && parameterTypes.length > 0) {
+                    throw new UnexpectedException("Parameter names not found for method " + method);
+                }
+                parameterNames = names;
+            }
+            return parameterNames;
+        }
+
+        /**
+         * Get the Scala object declaring this method
+         */
+        Object module() throws Exception {
+            if (module == null) {
+                module = method.getDeclaringClass().getDeclaredField("MODULE$");
+            }
+            return module.get(null);
+        }
+
+        @Override
+        public String toString() {
+            return method.getDeclaringClass().getName() + "." + method.getName() + "(" + parameterTypes.length + " args)";
+        }
+    }
+
+    /**
+     * Get an action
+     *
+     * @param fullAction The action, with or without the controllers package
+     * @throws play.exceptions.ActionNotFoundException If the action cannot be resolved
+     */
+    public static Entry get(String fullAction) {
+        Registry current = current();
+        if (!fullAction.startsWith("controllers.")) {
+            fullAction = "controllers." + fullAction;
+        }
+        // Controllers and actions are found ignoring case
+        String key = fullAction.toLowerCase();
+        Entry entry = current.actions.get(key);
+        if (entry == null) {
+            Object[] ca = ActionInvoker.getActionMethod(fullAction);
+            entry = new Entry((Class<?>) ca[0], (Method) ca[1]);
+            current.actions.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Get a registered action, without resolving it: no class is loaded
+     *
+     * @param fullAction The action, with or without the controllers package
+     * @return null if the action is not registered
+     */
+    public static Entry find(String fullAction) {
+        if (!fullAction.startsWith("controllers.")) {
+            fullAction = "controllers." + fullAction;
+        }
+        return current().actions.get(fullAction.toLowerCase());
+    }
+
+    /**
+     * @return true if some registered actions are {@link StreamedBody} actions, that the requests can be routed to
+     * before their body is received
+     */
+    public static boolean hasStreamedBodies() {
+        return current().streamedBodies;
+    }
+
+    /**
+     * Get the binding metadata of a controller method
+     */
+    public static ControllerMethod method(Method method) {
+        Map<Method, ControllerMethod> methods = current().methods;
+        ControllerMethod controllerMethod = methods.get(method);
+        if (controllerMethod == null) {
+            controllerMethod = new ControllerMethod(method);
+            methods.put(method, controllerMethod);
+        }
+        return controllerMethod;
+    }
+
+    /**
+     * Register all the actions of the application controllers.
+     */
+    public static void build() {
+        build(Play.classloader.getAssignableClasses(ControllerSupport.class));
+    }
+
+    /**
+     * Register all the actions of some controllers. The registry is published once complete, with the actions
+     * resolved on demand so far.
+     */
+    public static void build(List<Class> controllers) {
+        Registry current = current();
+        Registry built = new Registry(current.state, current.methods);
+        Map<String, Entry> actions = built.actions;
+        Set<String> seen = new HashSet<String>();
+        Set<String> ambiguous = new HashSet<String>();
+        for (Class<?> controllerClass : controllers) {
+            String name = controllerClass.getName().toLowerCase();
+            if (!seen.add(name)) {
+                ambiguous.add(name);
+            }
+        }
+        for (Class<?> controllerClass : controllers) {
+            String name = controllerClass.getName();
+            // Scala and inner controllers are resolved on demand
+            if (!name.startsWith("controllers.") || name.contains("$") || ambiguous.contains(name.toLowerCase())
+                    || Modifier.isAbstract(controllerClass.getModifiers())) {
+                continue;
+            }
+            Set<String> actionNames = new HashSet<String>();
+            for (Class<?> c = controllerClass; c != null && !c.equals(Object.class); c = c.getSuperclass()) {
+                for (Method method : c.getDeclaredMethods()) {
+                    if (Modifier.isPublic(method.getModifiers())) {
+                        actionNames.add(method.getName().toLowerCase());
+                    }
+                }
+            }
+            for (String actionName : actionNames) {
+                Method method = Java.findActionMethod(actionName, controllerClass);
+                if (method != null) {
+                    actions.put(name.toLowerCase() + "." + actionName, new Entry(controllerClass, method));
+                }
+            }
+        }
+        for (Map.Entry<String, Entry> resolved : current.actions.entrySet()) {
+            if (!actions.containsKey(resolved.getKey())) {
+                actions.put(resolved.getKey(), resolved.getValue());
+            }
+        }
+        for (Entry entry : actions.values()) {
+            if (entry.method.method.isAnnotationPresent(StreamedBody.class)) {
+                built.streamedBodies = true;
+                break;
+            }
+        }
+        if (built.streamedBodies && Play.pluginCollection.routesRequests()) {
+            Logger.warn("The bodies of the @StreamedBody actions are received before they are invoked, as a plugin routes the requests");
+            built.streamedBodies = false;
+        }
+        registry = built;
+        if (Logger.isTraceEnabled()) {
+            Logger.trace("%s actions registered", actions.size());
+        }
+    }
+
+    /**
+     * Get the registered actions, sorted by name.
+     */
+    public static List<Entry> all() {
+        List<Entry> all = new ArrayList<Entry>(current().actions.values());
+        Collections.sort(all, new java.util.Comparator<Entry>() {
+
+            public int compare(Entry e1, Entry e2) {
+                return e1.action.compareTo(e2.action);
+            }
+        });
+        return all;
+    }
+
+    /**
+     * Get the registry of the current application classes
+     */
+    static Registry current() {
+        ApplicationClassloaderState state = Play.classloader == null ? null : Play.classloader.currentState;
+        Registry current = registry;
+        if (current.state != state) {
+            // Classes have been reloaded
+            current = new Registry(state, new ConcurrentHashMap<Method, ControllerMethod>());
+            registry = current;
+        }
+        return current;
+    }
+}
@@ -51,7 +51,9 @@ import play.mvc.results.Unauthorized;
 import play.templates.Template;
 import play.templates.TemplateLoader;
 import play.utils.Default;
+import play.utils.HTTP;
 import play.utils.Java;
+import play.utils.Utils;
 import play.vfs.VirtualFile;
 
 import com.google.gson.JsonSerializer;
@@ -355,6 +357,56 @@ public class Controller implements ControllerSupport, LocalVariablesSupport {
         throw new NotModified();
     }
 
+    /**
+     * Send a 304 Not Modified response if the client already has this version of the resource, before rendering it.
+     * Otherwise the ETag is sent with the rendered response.
+     * @param etag The ETag of the resource, ie. its version
+     */
+    protected static void checkModified(String etag) {
+        checkModified(etag, null);
+    }
+
+    /**
+     * Send a 304 Not Modified response if the client already has this version of the resource, before rendering it.
+     * Otherwise the ETag and the last modification date are sent with the rendered response.
+     * @param etag The ETag of the resource, or null
+     * @param lastModified The last modification date of the resource, or null
+     */
+    protected static void checkModified(String etag, java.util.Date lastModified) {
+        Http.Request request = Http.Request.current();
+        Http.Response response = Http.Response.current();
+        if (etag != null && !etag.startsWith("\"") && !etag.startsWith("W/")) {
+            etag = "\"" + etag + "\"";
+        }
+        if (etag != null) {
+            response.setHeader("Etag", etag);
+        }
+        if (lastModified != null) {
+            response.setHeader("Last-Modified", Utils.getHttpDateFormatter().format(lastModified));
+        }
+        if (!request.method.equals("GET") && !request.method.equals("HEAD")) {
+            return;
+        }
+        Http.Header ifNoneMatch = request.headers.get("if-none-match");
+        Http.Header ifModifiedSince = request.headers.get("if-modified-since");
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since
+            if (etag != null && HTTP.etagMatches(ifNoneMatch.value(), etag)) {
+                throw new NotModified(etag);
+            }
+        } else if (ifModifiedSince != null && lastModified != null) {
+            try {
+                long since = Utils.getHttpDateFormatter().parse(ifModifiedSince.value()).getTime();
+                // HTTP dates have a one second precision
+                if (lastModified.getTime() / 1000 <= since / 1000) {
+                    throw new NotModified(etag);
+                }
+            } catch (java.text.ParseException e) {
+                Logger.warn("Can't parse HTTP date %s", ifModifiedSince.value());
+            }
+        }
+    }
+
     /**
      * Send a 400 Bad request
      */
@@ -554,8 +606,9 @@ public class Controller implements ControllerSupport, LocalVariablesSupport {
     protected static void redirect(String action, boolean permanent, Object... args) {
         try {
             Map<String, Object> newArgs = new HashMap<String, Object>(args.length);
-            Method actionMethod = (Method) ActionInvoker.getActionMethod(action)[1];
-            String[] names = (String[]) actionMethod.getDeclaringClass().getDeclaredField("$" + actionMethod.getName() + LocalVariablesNamesTracer.computeMethodHash(actionMethod.getParameterTypes())).get(null);
+            ActionRegistry.ControllerMethod controllerMethod = ActionRegistry.get(action).method;
+            Method actionMethod = controllerMethod.method;
+            String[] names = controllerMethod.parameterNames();
             for (int i = 0; i < names.length && i < args.length; i++) {
                 Annotation[] annotations = actionMethod.getParameterAnnotations()[i];
                 boolean isDefault = false;
@@ -740,7 +793,7 @@ public class Controller implements ControllerSupport, LocalVariablesSupport {
      * @return Annotation object or null if not found
      */
     protected static <T extends Annotation> T getActionAnnotation(Class<T> clazz) {
-        Method m = (Method) ActionInvoker.getActionMethod(Http.Request.current().action)[1];
+        Method m = ActionRegistry.get(Http.Request.current().action).method.method;
         if (m.isAnnotationPresent(clazz)) {
             return m.getAnnotation(clazz);
         }
@@ -0,0 +1,21 @@
+package play.mvc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The time given to the requests of the action, from their reception, overriding the <code>play.deadline</code>
+ * property. The database queries, web service calls and cache reads of the action are given the time left, and the
+ * request is answered with a 503 once it is spent. An annotation on the action overrides the one on its controller.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Deadline {
+
+    /**
+     * The time in milliseconds, 0 for no deadline
+     */
+    long value();
+}
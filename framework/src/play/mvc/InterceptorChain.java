@@ -0,0 +1,183 @@
+package play.mvc;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import play.Play;
+import play.classloading.ApplicationClassloaderState;
+import play.utils.Java;
+
+/**
+ * The @Before, @After, @Finally and @Catch interceptors applying to an action, sorted by priority.
+ * <p/>
+ * Chains are computed once per controller class and action, and dropped when the application classes change.
+ */
+class InterceptorChain {
+
+    /**
+     * The chains computed for the current application classes. The map and the classes state are swapped together, so
+     * that a chain computed for the previous classes is never found under the new state.
+     */
+    static volatile Chains chains = new Chains(null);
+
+    static class Chains {
+
+        final ApplicationClassloaderState state;
+        final Map<List<Object>, InterceptorChain> map = new ConcurrentHashMap<List<Object>, InterceptorChain>();
+
+        Chains(ApplicationClassloaderState state) {
+            this.state = state;
+        }
+    }
+
+    final Method[] befores;
+    final Method[] afters;
+    final Method[] finallies;
+    /**
+     * True for the @Finally methods taking the caught exception as parameter.
+     */
+    final boolean[] finallyWithThrowable;
+    final Method[] catches;
+    /**
+     * The exceptions handled by each @Catch method.
+     */
+    final Class<?>[][] catchExceptions;
+
+    /**
+     * Get the interceptors chain for an action
+     *
+     * @param controllerClass The controller class
+     * @param action          The action, ie. Application.index
+     */
+    static InterceptorChain get(Class<?> controllerClass, String action) {
+        ApplicationClassloaderState state = Play.classloader == null ? null : Play.classloader.currentState;
+        Chains current = chains;
+        if (current.state != state) {
+            // Classes have been reloaded
+            current = new Chains(state);
+            chains = current;
+        }
+        List<Object> key = java.util.Arrays.<Object>asList(controllerClass, action);
+        InterceptorChain chain = current.map.get(key);
+        if (chain == null) {
+            chain = new InterceptorChain(controllerClass, action);
+            current.map.put(key, chain);
+        }
+        return chain;
+    }
+
+    InterceptorChain(Class<?> controllerClass, String action) {
+        List<Method> methods = sorted(controllerClass, Before.class);
+        List<Method> selected = new ArrayList<Method>(methods.size());
+        for (Method before : methods) {
+            Before annotation = before.getAnnotation(Before.class);
+            if (applies(annotation.only(), annotation.unless(), before.getDeclaringClass().getName().substring(12).replace("$", ""), action)) {
+                selected.add(before);
+            }
+        }
+        befores = accessible(selected);
+
+        methods = sorted(controllerClass, After.class);
+        selected = new ArrayList<Method>(methods.size());
+        for (Method after : methods) {
+            After annotation = after.getAnnotation(After.class);
+            if (applies(annotation.only(), annotation.unless(), after.getDeclaringClass().getName().substring(12), action)) {
+                selected.add(after);
+            }
+        }
+        afters = accessible(selected);
+
+        methods = sorted(controllerClass, Finally.class);
+        selected = new ArrayList<Method>(methods.size());
+        for (Method aFinally : methods) {
+            Finally annotation = aFinally.getAnnotation(Finally.class);
+            if (applies(annotation.only(), annotation.unless(), aFinally.getDeclaringClass().getName().substring(12), action)) {
+                selected.add(aFinally);
+            }
+        }
+        finallies = accessible(selected);
+        finallyWithThrowable = new boolean[finallies.length];
+        for (int i = 0; i < finallies.length; i++) {
+            Class<?>[] parameterTypes = finallies[i].getParameterTypes();
+            finallyWithThrowable[i] = parameterTypes.length == 1 && parameterTypes[0] == Throwable.class;
+        }
+
+        catches = accessible(sorted(controllerClass, Catch.class));
+        catchExceptions = new Class<?>[catches.length][];
+        for (int i = 0; i < catches.length; i++) {
+            Class<?>[] exceptions = catches[i].getAnnotation(Catch.class).value();
+            if (exceptions.length == 0) {
+                exceptions = new Class<?>[]{Exception.class};
+            }
+            catchExceptions[i] = exceptions;
+        }
+    }
+
+    /**
+     * Check the only and unless values of an interceptor against the action.
+     *
+     * @param controller The controller declaring the interceptor, used for the values without controller
+     */
+    static boolean applies(String[] only, String[] unless, String controller, String action) {
+        boolean skip = false;
+        for (String un : only) {
+            if (!un.contains(".")) {
+                un = controller + "." + un;
+            }
+            if (un.equals(action)) {
+                skip = false;
+                break;
+            } else {
+                skip = true;
+            }
+        }
+        for (String un : unless) {
+            if (!un.contains(".")) {
+                un = controller + "." + un;
+            }
+            if (un.equals(action)) {
+                skip = true;
+                break;
+            }
+        }
+        return !skip;
+    }
+
+    static List<Method> sorted(Class<?> controllerClass, final Class<? extends Annotation> annotationType) {
+        // Copy, as the found methods list is shared
+        List<Method> methods = new ArrayList<Method>(Java.findAllAnnotatedMethods(controllerClass, annotationType));
+        Collections.sort(methods, new Comparator<Method>() {
+
+            public int compare(Method m1, Method m2) {
+                return priority(m1.getAnnotation(annotationType)) - priority(m2.getAnnotation(annotationType));
+            }
+        });
+        return methods;
+    }
+
+    static int priority(Annotation annotation) {
+        if (annotation instanceof Before) {
+            return ((Before) annotation).priority();
+        }
+        if (annotation instanceof After) {
+            return ((After) annotation).priority();
+        }
+        if (annotation instanceof Finally) {
+            return ((Finally) annotation).priority();
+        }
+        return ((Catch) annotation).priority();
+    }
+
+    static Method[] accessible(List<Method> methods) {
+        for (Method method : methods) {
+            method.setAccessible(true);
+        }
+        return methods.toArray(new Method[methods.size()]);
+    }
+}
@@ -0,0 +1,21 @@
+package play.mvc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Run the action in a named pool of threads instead of the main one, configured with the
+ * <code>play.pool.{name}.size</code>, <code>play.pool.{name}.queue</code> and <code>play.pool.{name}.rejection</code>
+ * properties. An annotation on the action overrides the one on its controller.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Pool {
+
+    /**
+     * The name of the pool
+     */
+    String value();
+}
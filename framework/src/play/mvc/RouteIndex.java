@@ -0,0 +1,301 @@
+package play.mvc;
+
+import jregex.Matcher;
+import play.Play;
+import play.mvc.Router.Route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled view of the routes list, used to avoid running every route regex on each request.
+ * <p/>
+ * For each HTTP method, routes are stored in a tree keyed by the static segments their path starts with.
+ * Looking up a path walks that tree segment by segment and returns the routes that can possibly match,
+ * in declaration order. Routes must still be checked with {@link Route#matches}, the index only prunes
+ * the routes whose leading static segments differ from the request path.
+ * <p/>
+ * It also memoizes, for reverse routing, the routes an action can be reversed to.
+ */
+class RouteIndex {
+
+    /**
+     * Characters allowed in a static path segment. Anything else may be a regex construct.
+     */
+    static final String LITERAL_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_~%@,;=!:'&/";
+
+    /**
+     * Upper bound of memoized reverse lookups, in case args names come from the outside.
+     */
+    static final int MAX_REVERSE_ENTRIES = 10000;
+
+    /**
+     * Version of the routes list this index was built from.
+     */
+    final long version;
+    final Node all;
+    final Node anyMethod;
+    final Map<String, Node> byMethod = new HashMap<String, Node>();
+    final List<Route> routes;
+    final Map<List<Object>, ReverseRoute[]> reverse = new ConcurrentHashMap<List<Object>, ReverseRoute[]>();
+
+    RouteIndex(List<Route> routes, long version) {
+        this.version = version;
+        this.routes = routes;
+        String[][] segments = new String[routes.size()][];
+        Set<String> methods = new HashSet<String>();
+        methods.add("HEAD");
+        for (int i = 0; i < routes.size(); i++) {
+            Route route = routes.get(i);
+            segments[i] = staticSegments(route);
+            if (route.method != null && !route.method.equals("*")) {
+                methods.add(route.method.toUpperCase());
+            }
+        }
+        this.all = build(routes, segments, null);
+        this.anyMethod = build(routes, segments, "*");
+        for (String method : methods) {
+            byMethod.put(method, build(routes, segments, method));
+        }
+    }
+
+    /**
+     * Get the routes that may match this request, in declaration order.
+     *
+     * @param method The HTTP method, or null to ignore the method
+     * @param path   The request path
+     */
+    List<Route> candidates(String method, String path) {
+        Node node;
+        if (method == null) {
+            node = all;
+        } else {
+            node = byMethod.get(method.toUpperCase());
+            if (node == null) {
+                // No route declares this method, only the '*' ones can match
+                node = anyMethod;
+            }
+        }
+        if (path.equals(Play.ctxPath)) {
+            path = path + "/";
+        }
+        if (!path.startsWith("/")) {
+            return node.candidates;
+        }
+        int start = 1;
+        while (node.children != null) {
+            int end = path.indexOf('/', start);
+            Node child = node.children.get(end < 0 ? path.substring(start) : path.substring(start, end));
+            if (child == null) {
+                break;
+            }
+            node = child;
+            if (end < 0) {
+                break;
+            }
+            start = end + 1;
+        }
+        return node.candidates;
+    }
+
+    /**
+     * Get the routes an action may be reversed to, in declaration order.
+     *
+     * @param action The action, without the controllers. prefix
+     * @param names  The names of the non null args
+     * @param format The current request format
+     */
+    ReverseRoute[] reverseCandidates(String action, Set<String> names, String format) {
+        List<Object> key = Arrays.<Object>asList(action, format, names);
+        ReverseRoute[] candidates = reverse.get(key);
+        if (candidates == null) {
+            candidates = reverseCandidates(routes, action, names, format);
+            if (reverse.size() < MAX_REVERSE_ENTRIES) {
+                reverse.put(key, candidates);
+            }
+        }
+        return candidates;
+    }
+
+    static ReverseRoute[] reverseCandidates(List<Route> routes, String action, Set<String> names, String format) {
+        Set<String> available = new HashSet<String>(names);
+        List<ReverseRoute> candidates = new ArrayList<ReverseRoute>();
+        for (Route route : routes) {
+            if (route.actionPattern == null) {
+                continue;
+            }
+            Matcher matcher = route.actionPattern.matcher(action);
+            if (!matcher.matches()) {
+                continue;
+            }
+            ReverseRoute candidate = new ReverseRoute();
+            candidate.route = route;
+            candidate.actionArgs = new HashMap<String, String>(route.actionArgs.size());
+            for (String group : route.actionArgs) {
+                String v = matcher.group(group);
+                if (v != null) {
+                    candidate.actionArgs.put(group, v.toLowerCase());
+                }
+            }
+            available.addAll(candidate.actionArgs.keySet());
+            candidate.possible = possible(route, available, format);
+            candidates.add(candidate);
+        }
+        return candidates.toArray(new ReverseRoute[candidates.size()]);
+    }
+
+    /**
+     * Check the args names, and the format, against the route. Their values are checked on each reverse.
+     */
+    static boolean possible(Route route, Set<String> names, String format) {
+        for (Route.Arg arg : route.args) {
+            if (!names.contains(arg.name)) {
+                // A missing arg may be resolved from the host, see Router.reverse
+                return route.host != null && route.host.length() > 0;
+            }
+        }
+        for (String staticKey : route.staticArgs.keySet()) {
+            if (staticKey.equals("format")) {
+                if (format != null && !format.equals(route.staticArgs.get("format"))) {
+                    return false;
+                }
+            } else if (!names.contains(staticKey)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean accepts(Route route, String method) {
+        if (method == null || route.method.equals("*")) {
+            return true;
+        }
+        if (method.equals("*")) {
+            return false;
+        }
+        return method.equalsIgnoreCase(route.method) || (method.equals("HEAD") && "GET".equalsIgnoreCase(route.method));
+    }
+
+    /**
+     * Compute the leading path segments a request must have, as is, for this route to match.
+     */
+    static String[] staticSegments(Route route) {
+        String path = route.path;
+        if (route.pattern == null || path == null || !path.startsWith("/") || path.indexOf('|') > -1) {
+            return new String[0];
+        }
+        int literalEnd = 0;
+        while (literalEnd < path.length() && LITERAL_CHARS.indexOf(path.charAt(literalEnd)) > -1) {
+            literalEnd++;
+        }
+        // A staticDir pattern goes on after its path
+        boolean complete = literalEnd == path.length() && (route.staticDir == null || route.staticFile);
+        if (!complete && literalEnd < path.length() && literalEnd > 0 && path.charAt(literalEnd - 1) == '/') {
+            // The last slash may be optional or repeated, ie. '/?' or '/*'
+            char next = path.charAt(literalEnd);
+            boolean repeated = next == '{' && literalEnd + 1 < path.length() && Character.isDigit(path.charAt(literalEnd + 1));
+            if (next == '?' || next == '*' || next == '+' || repeated) {
+                literalEnd = path.lastIndexOf('/', literalEnd - 2) + 1;
+            }
+        }
+        List<String> segments = new ArrayList<String>();
+        int start = 1;
+        while (start <= literalEnd) {
+            int end = path.indexOf('/', start);
+            if (end < 0 || end >= literalEnd) {
+                if (complete) {
+                    segments.add(path.substring(start));
+                }
+                break;
+            }
+            segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    static Node build(List<Route> routes, String[][] segments, String method) {
+        Node root = new Node();
+        for (int i = 0; i < routes.size(); i++) {
+            Route route = routes.get(i);
+            if (!accepts(route, method)) {
+                continue;
+            }
+            Node node = root;
+            for (String segment : segments[i]) {
+                node = node.child(segment);
+            }
+            node.positions.add(i);
+        }
+        root.compute(routes, new int[0]);
+        return root;
+    }
+
+    /**
+     * A route whose action pattern matches a reversed action.
+     */
+    static class ReverseRoute {
+
+        Route route;
+        /**
+         * The args extracted from the action, ie. the controller for {controller}.{action}
+         */
+        Map<String, String> actionArgs;
+        /**
+         * False if the args names cannot fit this route, whatever their values.
+         */
+        boolean possible;
+    }
+
+    static class Node {
+
+        Map<String, Node> children;
+        List<Integer> positions = new ArrayList<Integer>(2);
+        List<Route> candidates;
+
+        Node child(String segment) {
+            if (children == null) {
+                children = new HashMap<String, Node>(4);
+            }
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        /**
+         * Merge the routes declared along the path to this node, keeping the declaration order.
+         */
+        void compute(List<Route> routes, int[] inherited) {
+            int[] merged = new int[inherited.length + positions.size()];
+            int i = 0, j = 0, k = 0;
+            while (i < inherited.length || j < positions.size()) {
+                if (j == positions.size() || (i < inherited.length && inherited[i] < positions.get(j))) {
+                    merged[k++] = inherited[i++];
+                } else {
+                    merged[k++] = positions.get(j++);
+                }
+            }
+            Route[] matching = new Route[merged.length];
+            for (k = 0; k < merged.length; k++) {
+                matching[k] = routes.get(merged[k]);
+            }
+            candidates = Collections.unmodifiableList(Arrays.asList(matching));
+            positions = null;
+            if (children != null) {
+                for (Node child : children.values()) {
+                    child.compute(routes, merged);
+                }
+            }
+        }
+    }
+}
@@ -21,7 +21,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The router matches HTTP requests to action invocations
@@ -49,6 +49,8 @@ public class Router {
         lastLoading = System.currentTimeMillis();
         // Plugins
         Play.pluginCollection.onRoutesLoaded();
+        // Compile the routes now, rather than on the first request
+        routeIndex();
     }
 
     /**
@@ -229,10 +231,200 @@ public class Router {
     /**
      * All the loaded routes.
      */
-    public static List<Route> routes = new CopyOnWriteArrayList<Route>();
+    public static List<Route> routes = new RoutesList();
+
+    /**
+     * The compiled routes, rebuilt when the routes list changes.
+     */
+    static volatile RouteIndex routeIndex;
+
+    /**
+     * The routes list: a copy-on-write array, iterated over a snapshot. Any change to it makes the compiled routes out of
+     * date.
+     * <p/>
+     * Only the primitive operations of <code>AbstractList</code> are overridden, so that every other way to change the
+     * list (its list iterators, its sub lists, <code>removeIf</code>, <code>replaceAll</code>, <code>sort</code>...)
+     * goes through them and changes its version.
+     */
+    static class RoutesList extends AbstractList<Route> implements RandomAccess {
+
+        private volatile Route[] array = new Route[0];
+        private final AtomicLong version = new AtomicLong();
+
+        /**
+         * @return The version of the list, to be read before its snapshot
+         */
+        long version() {
+            return version.get();
+        }
+
+        Route[] snapshot() {
+            return array;
+        }
+
+        private void publish(Route[] routes) {
+            array = routes;
+            version.incrementAndGet();
+            modCount++;
+        }
+
+        @Override
+        public Route get(int index) {
+            return array[index];
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+
+        @Override
+        public synchronized Route set(int index, Route element) {
+            Route[] routes = array.clone();
+            Route previous = routes[index];
+            routes[index] = element;
+            publish(routes);
+            return previous;
+        }
+
+        @Override
+        public synchronized boolean add(Route element) {
+            add(array.length, element);
+            return true;
+        }
+
+        @Override
+        public synchronized void add(int index, Route element) {
+            addAll(index, Collections.singletonList(element));
+        }
+
+        @Override
+        public synchronized boolean addAll(Collection<? extends Route> c) {
+            return addAll(array.length, c);
+        }
+
+        @Override
+        public synchronized boolean addAll(int index, Collection<? extends Route> c) {
+            Route[] current = array;
+            if (index < 0 || index > current.length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
+            }
+            Route[] added = c.toArray(new Route[0]);
+            if (added.length == 0) {
+                return false;
+            }
+            Route[] routes = new Route[current.length + added.length];
+            System.arraycopy(current, 0, routes, 0, index);
+            System.arraycopy(added, 0, routes, index, added.length);
+            System.arraycopy(current, index, routes, index + added.length, current.length - index);
+            publish(routes);
+            return true;
+        }
+
+        @Override
+        public synchronized Route remove(int index) {
+            Route previous = array[index];
+            removeRange(index, index + 1);
+            return previous;
+        }
+
+        @Override
+        public synchronized boolean remove(Object o) {
+            Route[] current = array;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == o || (o != null && o.equals(current[i]))) {
+                    removeRange(i, i + 1);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected synchronized void removeRange(int fromIndex, int toIndex) {
+            Route[] current = array;
+            if (fromIndex < 0 || toIndex > current.length || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + current.length);
+            }
+            Route[] routes = new Route[current.length - (toIndex - fromIndex)];
+            System.arraycopy(current, 0, routes, 0, fromIndex);
+            System.arraycopy(current, toIndex, routes, fromIndex, current.length - toIndex);
+            publish(routes);
+        }
+
+        @Override
+        public synchronized void clear() {
+            publish(new Route[0]);
+        }
+
+        @Override
+        public Object[] toArray() {
+            return array.clone();
+        }
+
+        /**
+         * Iterate over a snapshot of the routes, that the changes made while iterating do not affect. Removing the
+         * current route through the iterator removes it from the list.
+         */
+        @Override
+        public Iterator<Route> iterator() {
+            final Route[] routes = array;
+            return new Iterator<Route>() {
+
+                int next = 0;
+                Route last;
+
+                public boolean hasNext() {
+                    return next < routes.length;
+                }
+
+                public Route next() {
+                    if (next >= routes.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return last = routes[next++];
+                }
+
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    RoutesList.this.remove(last);
+                    last = null;
+                }
+            };
+        }
+    }
+
+    /**
+     * Get the compiled routes, (re)building them if the routes list changed since last time.
+     *
+     * @return null if the routes list has been replaced by a list we cannot track
+     */
+    static RouteIndex routeIndex() {
+        if (!(routes instanceof RoutesList)) {
+            return null;
+        }
+        RoutesList list = (RoutesList) routes;
+        RouteIndex current = routeIndex;
+        long version = list.version();
+        if (current == null || current.version != version) {
+            current = new RouteIndex(Arrays.asList(list.snapshot()), version);
+            routeIndex = current;
+        }
+        return current;
+    }
+
+    /**
+     * Get the routes that may match a request, in declaration order.
+     */
+    static List<Route> candidates(String method, String path) {
+        RouteIndex current = routeIndex();
+        return current == null ? routes : current.candidates(method, path);
+    }
 
     public static void routeOnlyStatic(Http.Request request) {
-        for (Route route : routes) {
+        for (Route route : candidates(request.method, request.path)) {
             try {
                 if (route.matches(request.method, request.path, request.format, request.domain) != null) {
                     break;
@@ -253,28 +445,21 @@ public class Router {
             Logger.trace("Route: " + request.path + " - " + request.querystring);
         }
         // request method may be overriden if a x-http-method-override parameter is given
-        if (request.querystring != null && methodOverride.matches(request.querystring)) {
-            Matcher matcher = methodOverride.matcher(request.querystring);
-            if (matcher.matches()) {
-                if (Logger.isTraceEnabled()) {
-                    Logger.trace("request method %s overriden to %s ", request.method, matcher.group("method"));
-                }
-                request.method = matcher.group("method");
+        String method = overriddenMethod(request.method, request.querystring);
+        if (!method.equals(request.method)) {
+            if (Logger.isTraceEnabled()) {
+                Logger.trace("request method %s overriden to %s ", request.method, method);
             }
+            request.method = method;
         }
-        for (Route route : routes) {
+        for (Route route : candidates(request.method, request.path)) {
             Map<String, String> args = route.matches(request.method, request.path, request.format, request.domain);
             if (args != null) {
                 request.routeArgs = args;
-                request.action = route.action;
+                request.action = action(route, args);
                 if (args.containsKey("format")) {
                     request.format = args.get("format");
                 }
-                if (request.action.indexOf("{") > -1) { // more optimization ?
-                    for (String arg : request.routeArgs.keySet()) {
-                        request.action = request.action.replace("{" + arg + "}", request.routeArgs.get(arg));
-                    }
-                }
                 if (request.action.equals("404")) {
                     throw new NotFound(route.path);
                 }
@@ -293,6 +478,51 @@ public class Router {
         throw new NotFound(request.method, request.path);
     }
 
+    /**
+     * Get the action a request is routed to, as {@link #route(Http.Request)} finds it, without the request itself
+     *
+     * @param method The request method, before its override by the query string
+     * @return null if no route matches
+     * @throws NotFound If the request is routed to a 404
+     * @throws RenderStatic If the request is routed to a static file
+     */
+    public static String routeAction(String method, String path, String querystring, String domain) {
+        method = overriddenMethod(method, querystring);
+        for (Route route : candidates(method, path)) {
+            Map<String, String> args = route.matches(method, path, null, domain);
+            if (args != null) {
+                return action(route, args);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the method of a request, that a x-http-method-override parameter may override
+     */
+    static String overriddenMethod(String method, String querystring) {
+        if (querystring != null && methodOverride.matches(querystring)) {
+            Matcher matcher = methodOverride.matcher(querystring);
+            if (matcher.matches()) {
+                return matcher.group("method");
+            }
+        }
+        return method;
+    }
+
+    /**
+     * Get the action of a matched route, its {arg} replaced by the route args
+     */
+    static String action(Route route, Map<String, String> args) {
+        String action = route.action;
+        if (action.indexOf("{") > -1) { // more optimization ?
+            for (String arg : args.keySet()) {
+                action = action.replace("{" + arg + "}", args.get(arg));
+            }
+        }
+        return action;
+    }
+
     public static Map<String, String> route(String method, String path) {
         return route(method, path, null, null);
     }
@@ -302,7 +532,7 @@ public class Router {
     }
 
     public static Map<String, String> route(String method, String path, String headers, String host) {
-        for (Route route : routes) {
+        for (Route route : candidates(method, path)) {
             Map<String, String> args = route.matches(method, path, headers, host);
             if (args != null) {
                 args.put("action", route.action);
@@ -413,145 +643,160 @@ public class Router {
                 }
             }
         }
-        for (Route route : routes) {
-            if (route.actionPattern != null) {
-                Matcher matcher = route.actionPattern.matcher(action);
-                if (matcher.matches()) {
-                    for (String group : route.actionArgs) {
-                        String v = matcher.group(group);
-                        if (v == null) {
-                            continue;
-                        }
-                        args.put(group, v.toLowerCase());
+        String format = Http.Request.current() == null ? "" : Http.Request.current().format;
+        for (RouteIndex.ReverseRoute candidate : reverseCandidates(action, args, format)) {
+            args.putAll(candidate.actionArgs);
+            if (candidate.possible) {
+                ActionDefinition actionDefinition = reverse(candidate.route, action, args, argsbackup, encoding);
+                if (actionDefinition != null) {
+                    return actionDefinition;
+                }
+            }
+        }
+        throw new NoRouteFoundException(action, args);
+    }
+
+    /**
+     * Get the routes whose action pattern matches this action, in declaration order.
+     * These are memoized with the compiled routes, by action, args names and request format.
+     */
+    static RouteIndex.ReverseRoute[] reverseCandidates(String action, Map<String, Object> args, String format) {
+        Set<String> names = new TreeSet<String>();
+        for (Map.Entry<String, Object> entry : args.entrySet()) {
+            if (entry.getValue() != null) {
+                names.add(entry.getKey());
+            }
+        }
+        RouteIndex current = routeIndex();
+        if (current == null) {
+            return RouteIndex.reverseCandidates(routes, action, names, format);
+        }
+        return current.reverseCandidates(action, names, format);
+    }
+
+    /**
+     * Reverse an action on a route whose action pattern matches it.
+     *
+     * @return null if the args do not fit this route
+     */
+    static ActionDefinition reverse(Route route, String action, Map<String, Object> args, Map<String, Object> argsbackup, String encoding) {
+        List<String> inPathArgs = new ArrayList<String>(16);
+        // les noms de parametres matchent ils ?
+        for (Route.Arg arg : route.args) {
+            inPathArgs.add(arg.name);
+            Object value = args.get(arg.name);
+            if (value == null) {
+                // This is a hack for reverting on hostname that are a regex expression.
+                // See [#344] for more into. This is not optimal and should retough. However,
+                // it allows us to do things like {(.*}}.domain.com
+                String host = route.host.replaceAll("\\{", "").replaceAll("\\}", "");
+                if (host.equals(arg.name) || host.matches(arg.name)) {
+                    args.remove(arg.name);
+                    route.host = Http.Request.current() == null ? "" : Http.Request.current().domain;
+                    break;
+                } else {
+                    return null;
+                }
+            } else {
+                if (value instanceof List<?>) {
+                    @SuppressWarnings("unchecked")
+                    List<Object> l = (List<Object>) value;
+                    value = l.get(0);
+                }
+                if (!value.toString().startsWith(":") && !arg.constraint.matches(value.toString())) {
+                    return null;
+                }
+            }
+        }
+        // les parametres codes en dur dans la route matchent-ils ?
+        for (String staticKey : route.staticArgs.keySet()) {
+            if (staticKey.equals("format")) {
+                if (!(Http.Request.current() == null ? "" : Http.Request.current().format).equals(route.staticArgs.get("format"))) {
+                    return null;
+                }
+                continue; // format is a special key
+            }
+            if (!args.containsKey(staticKey) || (args.get(staticKey) == null)
+                    || !args.get(staticKey).toString().equals(route.staticArgs.get(staticKey))) {
+                return null;
+            }
+        }
+        StringBuilder queryString = new StringBuilder();
+        String path = route.path;
+        String host = route.host;
+        if (path.endsWith("/?")) {
+            path = path.substring(0, path.length() - 2);
+        }
+        for (Map.Entry<String, Object> entry : args.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (inPathArgs.contains(key) && value != null) {
+                java.util.regex.Pattern placeholder = route.placeholder(key);
+                if (List.class.isAssignableFrom(value.getClass())) {
+                    @SuppressWarnings("unchecked")
+                    List<Object> vals = (List<Object>) value;
+                    path = placeholder.matcher(path).replaceAll(vals.get(0).toString()).replace("$", "\\$");
+                } else {
+                    String encoded;
+                    try {
+                        encoded = URLEncoder.encode(value.toString(), encoding);
+                    } catch (UnsupportedEncodingException e) {
+                        encoded = value.toString();
                     }
-                    List<String> inPathArgs = new ArrayList<String>(16);
-                    boolean allRequiredArgsAreHere = true;
-                    // les noms de parametres matchent ils ?
-                    for (Route.Arg arg : route.args) {
-                        inPathArgs.add(arg.name);
-                        Object value = args.get(arg.name);
-                        if (value == null) {
-                            // This is a hack for reverting on hostname that are a regex expression.
-                            // See [#344] for more into. This is not optimal and should retough. However,
-                            // it allows us to do things like {(.*}}.domain.com
-                            String host = route.host.replaceAll("\\{", "").replaceAll("\\}", "");
-                            if (host.equals(arg.name) || host.matches(arg.name)) {
-                                args.remove(arg.name);
-                                route.host = Http.Request.current() == null ? "" : Http.Request.current().domain;
-                                break;
+                    encoded = encoded.replace("$", "\\$").replace("%3A", ":").replace("%40", "@").replace("+", "%20");
+                    path = placeholder.matcher(path).replaceAll(encoded);
+                    host = placeholder.matcher(host).replaceAll(encoded);
+                }
+            } else if (route.staticArgs.containsKey(key)) {
+                // Do nothing -> The key is static
+            } else if (!argsbackup.containsKey(key)) {
+                // Do nothing -> The key is provided in RouteArgs and not used (see #447)
+            } else if (value != null) {
+                if (List.class.isAssignableFrom(value.getClass())) {
+                    @SuppressWarnings("unchecked")
+                    List<Object> vals = (List<Object>) value;
+                    for (Object object : vals) {
+                        try {
+                            queryString.append(URLEncoder.encode(key, encoding));
+                            queryString.append("=");
+                            if (object.toString().startsWith(":")) {
+                                queryString.append(object.toString());
                             } else {
-                                allRequiredArgsAreHere = false;
-                                break;
-                            }
-                        } else {
-                            if (value instanceof List<?>) {
-                                @SuppressWarnings("unchecked")
-                                List<Object> l = (List<Object>) value;
-                                value = l.get(0);
-                            }
-                            if (!value.toString().startsWith(":") && !arg.constraint.matches(value.toString())) {
-                                allRequiredArgsAreHere = false;
-                                break;
+                                queryString.append(URLEncoder.encode(object.toString() + "", encoding));
                             }
+                            queryString.append("&");
+                        } catch (UnsupportedEncodingException ex) {
                         }
                     }
-                    // les parametres codes en dur dans la route matchent-ils ?
-                    for (String staticKey : route.staticArgs.keySet()) {
-                        if (staticKey.equals("format")) {
-                            if (!(Http.Request.current() == null ? "" : Http.Request.current().format).equals(route.staticArgs.get("format"))) {
-                                allRequiredArgsAreHere = false;
-                                break;
-                            }
-                            continue; // format is a special key
-                        }
-                        if (!args.containsKey(staticKey) || (args.get(staticKey) == null)
-                                || !args.get(staticKey).toString().equals(route.staticArgs.get(staticKey))) {
-                            allRequiredArgsAreHere = false;
-                            break;
-                        }
-                    }
-                    if (allRequiredArgsAreHere) {
-                        StringBuilder queryString = new StringBuilder();
-                        String path = route.path;
-                        String host = route.host;
-                        if (path.endsWith("/?")) {
-                            path = path.substring(0, path.length() - 2);
-                        }
-                        for (Map.Entry<String, Object> entry : args.entrySet()) {
-                            String key = entry.getKey();
-                            Object value = entry.getValue();
-                            if (inPathArgs.contains(key) && value != null) {
-                                if (List.class.isAssignableFrom(value.getClass())) {
-                                    @SuppressWarnings("unchecked")
-                                    List<Object> vals = (List<Object>) value;
-                                    path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", vals.get(0).toString()).replace("$", "\\$");
-                                } else {
-									try {
-                                    	path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(value.toString(), encoding).replace("$", "\\$").replace("%3A", ":").replace("%40", "@").replace("+", "%20"));
-                                    } catch(UnsupportedEncodingException e) {
-										path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", value.toString().replace("$", "\\$").replace("%3A", ":").replace("%40", "@").replace("+", "%20"));
-									}
-									try {
-										host = host.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(value.toString(), encoding).replace("$", "\\$").replace("%3A", ":").replace("%40", "@").replace("+", "%20"));
-   								 	} catch(UnsupportedEncodingException e) {
-										host = host.replaceAll("\\{(<[^>]+>)?" + key + "\\}", value.toString().replace("$", "\\$").replace("%3A", ":").replace("%40", "@").replace("+", "%20"));
-									}
-                                }
-                            } else if (route.staticArgs.containsKey(key)) {
-                                // Do nothing -> The key is static
-                            } else if (!argsbackup.containsKey(key)) {
-                                // Do nothing -> The key is provided in RouteArgs and not used (see #447)
-                            } else if (value != null) {
-                                if (List.class.isAssignableFrom(value.getClass())) {
-                                    @SuppressWarnings("unchecked")
-                                    List<Object> vals = (List<Object>) value;
-                                    for (Object object : vals) {
-                                        try {
-                                            queryString.append(URLEncoder.encode(key, encoding));
-                                            queryString.append("=");
-                                            if (object.toString().startsWith(":")) {
-                                                queryString.append(object.toString());
-                                            } else {
-                                                queryString.append(URLEncoder.encode(object.toString() + "", encoding));
-                                            }
-                                            queryString.append("&");
-                                        } catch (UnsupportedEncodingException ex) {
-                                        }
-                                    }
-                                } else if (value.getClass().equals(Default.class)) {
-                                    // Skip defaults in queryString
-                                } else {
-                                    try {
-                                        queryString.append(URLEncoder.encode(key, encoding));
-                                        queryString.append("=");
-                                        if (value.toString().startsWith(":")) {
-                                            queryString.append(value.toString());
-                                        } else {
-                                            queryString.append(URLEncoder.encode(value.toString() + "", encoding));
-                                        }
-                                        queryString.append("&");
-                                    } catch (UnsupportedEncodingException ex) {
-                                    }
-                                }
-                            }
-                        }
-                        String qs = queryString.toString();
-                        if (qs.endsWith("&")) {
-                            qs = qs.substring(0, qs.length() - 1);
+                } else if (value.getClass().equals(Default.class)) {
+                    // Skip defaults in queryString
+                } else {
+                    try {
+                        queryString.append(URLEncoder.encode(key, encoding));
+                        queryString.append("=");
+                        if (value.toString().startsWith(":")) {
+                            queryString.append(value.toString());
+                        } else {
+                            queryString.append(URLEncoder.encode(value.toString() + "", encoding));
                         }
-                        ActionDefinition actionDefinition = new ActionDefinition();
-                        actionDefinition.url = qs.length() == 0 ? path : path + "?" + qs;
-                        actionDefinition.method = route.method == null || route.method.equals("*") ? "GET" : route.method.toUpperCase();
-                        actionDefinition.star = "*".equals(route.method);
-                        actionDefinition.action = action;
-                        actionDefinition.args = argsbackup;
-                        actionDefinition.host = host;
-                        return actionDefinition;
+                        queryString.append("&");
+                    } catch (UnsupportedEncodingException ex) {
                     }
                 }
             }
         }
-        throw new NoRouteFoundException(action, args);
+        String qs = queryString.toString();
+        if (qs.endsWith("&")) {
+            qs = qs.substring(0, qs.length() - 1);
+        }
+        ActionDefinition actionDefinition = new ActionDefinition();
+        actionDefinition.url = qs.length() == 0 ? path : path + "?" + qs;
+        actionDefinition.method = route.method == null || route.method.equals("*") ? "GET" : route.method.toUpperCase();
+        actionDefinition.star = "*".equals(route.method);
+        actionDefinition.action = action;
+        actionDefinition.args = argsbackup;
+        actionDefinition.host = host;
+        return actionDefinition;
     }
 
     public static class ActionDefinition {
@@ -885,12 +1130,32 @@ public class Router {
             return null;
         }
 
+        /**
+         * Get the pattern locating an argument in the path or host, ie. {id} or {<[0-9]+>id}.
+         */
+        java.util.regex.Pattern placeholder(String name) {
+            for (Arg arg : args) {
+                if (arg.name.equals(name)) {
+                    return arg.placeholder();
+                }
+            }
+            return java.util.regex.Pattern.compile("\\{(<[^>]+>)?" + name + "\\}");
+        }
+
         static class Arg {
 
             String name;
             Pattern constraint;
             String defaultValue;
             Boolean optional = false;
+            java.util.regex.Pattern placeholder;
+
+            java.util.regex.Pattern placeholder() {
+                if (placeholder == null) {
+                    placeholder = java.util.regex.Pattern.compile("\\{(<[^>]+>)?" + name + "\\}");
+                }
+                return placeholder;
+            }
         }
 
         @Override
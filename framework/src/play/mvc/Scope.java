@@ -357,6 +357,11 @@ public class Scope {
         public void checkAndParse() {
             if (!requestIsParsed) {
                 Http.Request request = Http.Request.current();
+                if (request.invokedMethod != null && request.invokedMethod.isAnnotationPresent(StreamedBody.class)) {
+                    // The body is read by the action itself
+                    requestIsParsed = true;
+                    return;
+                }
                 String contentType = request.contentType;
                 if (contentType != null) {
                     DataParser dataParser = DataParser.parsers.get(contentType);
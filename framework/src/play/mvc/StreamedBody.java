@@ -0,0 +1,21 @@
+package play.mvc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Invoke an action as soon as the request headers are received, its <code>request.body</code> being read while the
+ * client sends it.
+ *
+ * <p>A large upload can then be copied to its destination with a constant memory, instead of being written to a
+ * temporary file first. The client is slowed down when the action reads the body slower than it is received. The
+ * request parameters only come from the URL: the body is not parsed.
+ *
+ * <p>Example: <code>@StreamedBody public static void upload(String name) { IO.copy(request.body, out); }</code>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface StreamedBody {
+}
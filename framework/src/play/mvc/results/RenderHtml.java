@@ -18,7 +18,7 @@ public class RenderHtml extends Result {
     public void apply(Request request, Response response) {
         try {
             setContentTypeIfNotSet(response, "text/html");
-            response.out.write(text.getBytes(getEncoding()));
+            write(response, text, getEncoding());
         } catch(Exception e) {
             throw new UnexpectedException(e);
         }
@@ -19,7 +19,7 @@ public class RenderText extends Result {
     public void apply(Request request, Response response) {
         try {
             setContentTypeIfNotSet(response, "text/plain; charset=" + Http.Response.current().encoding);
-            response.out.write(text.getBytes(getEncoding()));
+            write(response, text, getEncoding());
         } catch(Exception e) {
             throw new UnexpectedException(e);
         }
@@ -1,5 +1,9 @@
 package play.mvc.results;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
 import play.mvc.Http;
 import play.utils.FastRuntimeException;
 
@@ -22,6 +26,15 @@ public abstract class Result extends FastRuntimeException {
         response.setContentTypeIfNotSet(contentType);
     }
 
+    /**
+     * Write a text in the response body, encoding it straight into the body stream rather than in a copy
+     */
+    protected void write(Http.Response response, String text, String encoding) throws IOException {
+        Writer writer = new OutputStreamWriter(response.out, encoding);
+        writer.write(text);
+        writer.flush();
+    }
+
     /**
      * The encoding that should be used when writing this response to the client
      */
@@ -658,6 +658,22 @@ public class PluginCollection {
         }
     }
 
+    /**
+     * @return true if an enabled plugin implements routeRequest
+     */
+    public boolean routesRequests() {
+        for (PlayPlugin plugin : getEnabledPlugins()) {
+            try {
+                if (plugin.getClass().getMethod("routeRequest", Http.Request.class).getDeclaringClass() != PlayPlugin.class) {
+                    return true;
+                }
+            } catch (NoSuchMethodException e) {
+                // Cannot happen
+            }
+        }
+        return false;
+    }
+
     public void onRequestRouting(Router.Route route){
         for (PlayPlugin plugin : getEnabledPlugins()) {
             plugin.onRequestRouting(route);
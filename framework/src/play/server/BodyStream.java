@@ -0,0 +1,127 @@
+package play.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+
+/**
+ * The body of a request, read by the action while it is received.
+ * <p/>
+ * The I/O thread offers the chunks as they come. When more than <code>maxBuffered</code> bytes are waiting to be read,
+ * the channel stops being read, so that the client is slowed down by TCP, until the action has read half of them.
+ */
+class BodyStream extends InputStream {
+
+    final Channel channel;
+    final long maxBuffered;
+    final LinkedList<ChannelBuffer> chunks = new LinkedList<ChannelBuffer>();
+    long buffered;
+    boolean suspended;
+    boolean ended;
+    boolean closed;
+    IOException error;
+
+    BodyStream(Channel channel, long maxBuffered) {
+        this.channel = channel;
+        this.maxBuffered = maxBuffered;
+    }
+
+    /**
+     * Add a received chunk
+     */
+    synchronized void offer(ChannelBuffer chunk) {
+        if (closed || !chunk.readable()) {
+            return;
+        }
+        chunks.add(chunk);
+        buffered += chunk.readableBytes();
+        if (buffered > maxBuffered && !suspended) {
+            suspended = true;
+            channel.setReadable(false);
+        }
+        notifyAll();
+    }
+
+    /**
+     * The whole body has been received
+     */
+    synchronized void end() {
+        ended = true;
+        notifyAll();
+    }
+
+    /**
+     * The body cannot be received entirely
+     */
+    synchronized void fail(IOException e) {
+        if (!ended) {
+            error = e;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (chunks.isEmpty()) {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (error != null) {
+                throw error;
+            }
+            if (ended) {
+                return -1;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while waiting for the request body");
+            }
+        }
+        ChannelBuffer chunk = chunks.getFirst();
+        int read = Math.min(len, chunk.readableBytes());
+        chunk.readBytes(b, off, read);
+        if (!chunk.readable()) {
+            chunks.removeFirst();
+        }
+        buffered -= read;
+        resume();
+        return read;
+    }
+
+    @Override
+    public synchronized int available() {
+        return (int) Math.min(buffered, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Stop reading the body. The rest of it is still received, and discarded.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        chunks.clear();
+        buffered = 0;
+        resume();
+        notifyAll();
+    }
+
+    private void resume() {
+        if (suspended && buffered <= maxBuffered / 2) {
+            suspended = false;
+            channel.setReadable(true);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package play.server;
+
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import play.libs.Codec;
+import play.utils.Utils;
+
+/**
+ * The byte ranges of a content requested with a Range header, ie. <code>bytes=0-499,-500</code>.
+ */
+class ByteRanges {
+
+    /**
+     * Above this, the Range header is ignored and the whole content is sent
+     */
+    static final int MAX_RANGES = 16;
+
+    static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * First and last positions of each range, inclusive
+     */
+    final long[] starts;
+    final long[] ends;
+    /**
+     * The complete content length
+     */
+    final long length;
+    final String boundary;
+
+    ByteRanges(List<long[]> ranges, long length) {
+        this.starts = new long[ranges.size()];
+        this.ends = new long[ranges.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = ranges.get(i)[0];
+            ends[i] = ranges.get(i)[1];
+        }
+        this.length = length;
+        this.boundary = starts.length > 1 ? Codec.UUID().replace("-", "") : null;
+    }
+
+    /**
+     * Parse a Range header
+     *
+     * @param header The Range header value
+     * @param length The complete content length
+     * @return null if the header should be ignored, empty ranges if none can be satisfied
+     */
+    static ByteRanges parse(String header, long length) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<long[]>();
+        for (String spec : header.substring(6).split(",")) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long start;
+            long end;
+            try {
+                if (dash == 0) {
+                    // The last bytes
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix == 0 || length == 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    end = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                    if (start < 0 || end < start) {
+                        return null;
+                    }
+                    if (start >= length) {
+                        continue;
+                    }
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            ranges.add(new long[]{start, end});
+        }
+        if (ranges.size() > MAX_RANGES) {
+            return null;
+        }
+        return new ByteRanges(ranges, length);
+    }
+
+    /**
+     * Check an If-Range header against the current version of the content
+     *
+     * @param ifRange      The If-Range value, an ETag or a date
+     * @param etag         The content ETag, or null
+     * @param lastModified The content last modification date, or 0
+     */
+    static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Weak ETags cannot be used for ranges
+            return etag != null && !etag.startsWith("W/") && ifRange.equals(etag);
+        }
+        try {
+            return lastModified > 0 && Utils.getHttpDateFormatter().parse(ifRange).getTime() / 1000 == lastModified / 1000;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    boolean isSatisfiable() {
+        return starts.length > 0;
+    }
+
+    int size() {
+        return starts.length;
+    }
+
+    long length(int range) {
+        return ends[range] - starts[range] + 1;
+    }
+
+    /**
+     * Get the Content-Range of a range
+     */
+    String contentRange(int range) {
+        return "bytes " + starts[range] + "-" + ends[range] + "/" + length;
+    }
+
+    /**
+     * Get the headers of a range in a multipart/byteranges content
+     */
+    ChannelBuffer partHeader(int range, String contentType) {
+        StringBuilder header = new StringBuilder();
+        if (range > 0) {
+            header.append("\r\n");
+        }
+        header.append("--").append(boundary).append("\r\n");
+        if (contentType != null) {
+            header.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        header.append("Content-Range: ").append(contentRange(range)).append("\r\n\r\n");
+        return ChannelBuffers.copiedBuffer(header, ASCII);
+    }
+
+    /**
+     * Get the end of a multipart/byteranges content
+     */
+    ChannelBuffer closing() {
+        return ChannelBuffers.copiedBuffer("\r\n--" + boundary + "--\r\n", ASCII);
+    }
+
+    /**
+     * Get the total length of a multipart/byteranges content
+     */
+    long multipartLength(String contentType) {
+        long total = closing().readableBytes();
+        for (int i = 0; i < size(); i++) {
+            total += partHeader(i, contentType).readableBytes() + length(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,246 @@
+package play.server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.codec.compression.ZlibEncoder;
+import org.jboss.netty.handler.codec.compression.ZlibWrapper;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+
+import play.Play;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.*;
+
+/**
+ * Compress the responses with gzip or deflate, as accepted by the client.
+ * <p/>
+ * Only the responses whose content type is listed in <code>play.netty.compression.mimeTypes</code> are compressed:
+ * the rendered ones of at least <code>play.netty.compression.minSize</code> bytes, and the chunked ones. Files and
+ * streams are sent as is, see {@link PlayHandler#serveStatic} for precompressed files.
+ */
+public class CompressionHandler extends SimpleChannelHandler {
+
+    static final String DEFAULT_MIME_TYPES = "text/*,application/json,application/javascript,application/x-javascript,"
+            + "application/xml,application/xhtml+xml,application/rss+xml,application/atom+xml,image/svg+xml";
+
+    final Set<String> mimeTypes = new HashSet<String>();
+    final List<String> mimeTypePrefixes = new ArrayList<String>();
+    final int minSize;
+    final int level;
+
+    /**
+     * The Accept-Encoding of the requests waiting for their response, in order
+     */
+    final Queue<String> acceptEncodings = new ConcurrentLinkedQueue<String>();
+    /**
+     * The chunked response being compressed
+     */
+    EncoderEmbedder<ChannelBuffer> encoder;
+
+    public CompressionHandler() {
+        for (String mimeType : Play.configuration.getProperty("play.netty.compression.mimeTypes", DEFAULT_MIME_TYPES).split(",")) {
+            mimeType = mimeType.trim().toLowerCase();
+            if (mimeType.endsWith("/*")) {
+                mimeTypePrefixes.add(mimeType.substring(0, mimeType.length() - 1));
+            } else if (mimeType.length() > 0) {
+                mimeTypes.add(mimeType);
+            }
+        }
+        minSize = Integer.parseInt(Play.configuration.getProperty("play.netty.compression.minSize", "1024"));
+        level = Integer.parseInt(Play.configuration.getProperty("play.netty.compression.level", "6"));
+    }
+
+    /**
+     * Check if the responses compression is enabled
+     */
+    public static boolean isEnabled() {
+        return Play.configuration.getProperty("play.netty.compression", "false").equals("true");
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof HttpRequest) {
+            HttpRequest request = (HttpRequest) e.getMessage();
+            String acceptEncoding = request.getHeader(ACCEPT_ENCODING);
+            // The content of a HEAD response is not sent, its headers must be those of the GET one
+            if (acceptEncoding == null || request.getMethod().equals(HttpMethod.HEAD)) {
+                acceptEncoding = "";
+            }
+            acceptEncodings.offer(acceptEncoding);
+        }
+        super.messageReceived(ctx, e);
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        Object message = e.getMessage();
+        if (message instanceof HttpResponse) {
+            HttpResponse response = (HttpResponse) message;
+            if (response.getStatus().getCode() == 100) {
+                // Not the final response
+                super.writeRequested(ctx, e);
+                return;
+            }
+            String acceptEncoding = acceptEncodings.poll();
+            encoder = null;
+            if (isCompressible(response)) {
+                addVary(response);
+                ZlibWrapper wrapper = wrapper(acceptEncoding);
+                if (wrapper != null) {
+                    if (response.isChunked() || HttpHeaders.Values.CHUNKED.equalsIgnoreCase(response.getHeader(TRANSFER_ENCODING))) {
+                        encoder = newEncoder(wrapper);
+                        setEncoding(response, wrapper);
+                        response.removeHeader(CONTENT_LENGTH);
+                    } else if (response.getContent().readableBytes() >= minSize) {
+                        EncoderEmbedder<ChannelBuffer> full = newEncoder(wrapper);
+                        full.offer(response.getContent());
+                        full.finish();
+                        ChannelBuffer compressed = drain(full);
+                        setEncoding(response, wrapper);
+                        response.setContent(compressed);
+                        response.setHeader(CONTENT_LENGTH, String.valueOf(compressed.readableBytes()));
+                    }
+                }
+            }
+        } else if (message instanceof HttpChunk && encoder != null) {
+            HttpChunk chunk = (HttpChunk) message;
+            if (chunk.isLast()) {
+                encoder.finish();
+                ChannelBuffer rest = drain(encoder);
+                encoder = null;
+                if (rest.readable()) {
+                    Channels.write(ctx, Channels.future(ctx.getChannel()), new DefaultHttpChunk(rest));
+                }
+            } else {
+                encoder.offer(chunk.getContent());
+                ChannelBuffer compressed = drain(encoder);
+                if (!compressed.readable()) {
+                    // Nothing to send yet, and an empty chunk would end the response
+                    e.getFuture().setSuccess();
+                    return;
+                }
+                Channels.write(ctx, e.getFuture(), new DefaultHttpChunk(compressed));
+                return;
+            }
+        }
+        super.writeRequested(ctx, e);
+    }
+
+    boolean isCompressible(HttpResponse response) {
+        int status = response.getStatus().getCode();
+        if (status < 200 || status == 204 || status == 206 || status == 304 || response.containsHeader(CONTENT_ENCODING)) {
+            return false;
+        }
+        return isCompressible(response.getHeader(CONTENT_TYPE));
+    }
+
+    /**
+     * Check if a content type is in the compressed ones
+     */
+    boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int parameters = contentType.indexOf(';');
+        contentType = (parameters < 0 ? contentType : contentType.substring(0, parameters)).trim().toLowerCase();
+        if (mimeTypes.contains(contentType)) {
+            return true;
+        }
+        for (String prefix : mimeTypePrefixes) {
+            if (contentType.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    EncoderEmbedder<ChannelBuffer> newEncoder(ZlibWrapper wrapper) {
+        return new EncoderEmbedder<ChannelBuffer>(new ZlibEncoder(wrapper, level));
+    }
+
+    static ChannelBuffer drain(EncoderEmbedder<ChannelBuffer> encoder) {
+        ChannelBuffer[] buffers = encoder.pollAll(new ChannelBuffer[encoder.size()]);
+        return buffers.length == 1 ? buffers[0] : ChannelBuffers.wrappedBuffer(buffers);
+    }
+
+    static void setEncoding(HttpResponse response, ZlibWrapper wrapper) {
+        response.setHeader(CONTENT_ENCODING, wrapper == ZlibWrapper.GZIP ? HttpHeaders.Values.GZIP : HttpHeaders.Values.DEFLATE);
+        // The compressed content is another representation, it only matches the original one semantically
+        String etag = response.getHeader(ETAG);
+        if (etag != null && !etag.startsWith("W/")) {
+            response.setHeader(ETAG, "W/" + etag);
+        }
+    }
+
+    static void addVary(HttpResponse response) {
+        String vary = response.getHeader(VARY);
+        if (vary == null) {
+            response.setHeader(VARY, ACCEPT_ENCODING);
+        } else if (!vary.toLowerCase().contains("accept-encoding") && !vary.equals("*")) {
+            response.setHeader(VARY, vary + ", " + ACCEPT_ENCODING);
+        }
+    }
+
+    /**
+     * Choose the compression from an Accept-Encoding header, gzip first.
+     *
+     * @return null if the client does not accept gzip nor deflate
+     */
+    static ZlibWrapper wrapper(String acceptEncoding) {
+        if (accepts(acceptEncoding, "gzip")) {
+            return ZlibWrapper.GZIP;
+        }
+        if (accepts(acceptEncoding, "deflate")) {
+            return ZlibWrapper.ZLIB;
+        }
+        return null;
+    }
+
+    /**
+     * Check if an Accept-Encoding header accepts an encoding
+     */
+    public static boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(encoding)) {
+                return accepted;
+            }
+            if (name.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard;
+    }
+}
@@ -22,7 +22,11 @@ public class HttpServerPipelineFactory implements ChannelPipelineFactory {
         pipeline.addLast("decoder", new HttpRequestDecoder());
         pipeline.addLast("aggregator", new StreamChunkAggregator(max));
         pipeline.addLast("encoder", new HttpResponseEncoder());
+        if (CompressionHandler.isEnabled()) {
+            pipeline.addLast("compressor", new CompressionHandler());
+        }
         pipeline.addLast("chunkedWriter", playHandler.chunkedWriteHandler);
+        pipeline.addLast("pipelining", new PipeliningHandler());
         pipeline.addLast("handler", playHandler);
 
         return pipeline;
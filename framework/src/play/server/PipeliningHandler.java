@@ -0,0 +1,210 @@
+package play.server;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.FileRegion;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.stream.ChunkedInput;
+
+import play.Logger;
+
+/**
+ * Write the responses of a connection in the order of its requests, as HTTP/1.1 pipelining requires.
+ * <p/>
+ * The requests received on a connection are executed concurrently, but the writes made for a request are held until
+ * the responses to all the previous requests have been written. A write is made for the request of the current
+ * {@link Slot}, which is set while the request is handled: in the I/O thread while it is received, and in the
+ * invocation thread while its action is executed. The other writes, ie. a 100 Continue or a WebSocket frame, come
+ * after the responses to all the requests received so far.
+ * <p/>
+ * A pipeline must have its own instance, placed above the <code>ChunkedWriteHandler</code>.
+ */
+public class PipeliningHandler extends SimpleChannelHandler {
+
+    static final ThreadLocal<Slot> current = new ThreadLocal<Slot>();
+
+    /**
+     * The slot of the first request whose response is not completely written
+     */
+    private Slot head;
+    /**
+     * The slot of the next request to be received
+     */
+    private Slot next;
+    private boolean closed;
+    private ChannelHandlerContext ctx;
+
+    public PipeliningHandler() {
+        head = next = new Slot(0);
+    }
+
+    /**
+     * The place of a request in the responses of its connection
+     */
+    public class Slot {
+
+        final int sequence;
+        /**
+         * The writes waiting for the previous responses
+         */
+        final List<MessageEvent> pending = new LinkedList<MessageEvent>();
+        /**
+         * The handlers still to write for this request: the I/O thread, and the invocation if any
+         */
+        final AtomicInteger holders = new AtomicInteger(1);
+        Slot following;
+        boolean completed;
+
+        Slot(int sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Hold the slot, until {@link #release()}: the response is not complete before
+         */
+        public void retain() {
+            holders.incrementAndGet();
+        }
+
+        /**
+         * Release the slot. The response is complete once all its holders have released it.
+         */
+        public void release() {
+            if (holders.decrementAndGet() == 0) {
+                complete(this);
+            }
+        }
+
+        PipeliningHandler handler() {
+            return PipeliningHandler.this;
+        }
+    }
+
+    /**
+     * Get the slot of the request being handled by the current thread, or null
+     */
+    public static Slot current() {
+        return current.get();
+    }
+
+    /**
+     * Make the current thread write for a request, until {@link #leave(Slot)}
+     *
+     * @param slot The request slot, or null
+     * @return The previous slot of the thread, to be left for
+     */
+    public static Slot enter(Slot slot) {
+        Slot previous = current.get();
+        current.set(slot);
+        return previous;
+    }
+
+    public static void leave(Slot previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (!(e.getMessage() instanceof HttpRequest)) {
+            ctx.sendUpstream(e);
+            return;
+        }
+        Slot slot;
+        synchronized (this) {
+            slot = next;
+            next = new Slot(slot.sequence + 1);
+            slot.following = next;
+        }
+        Slot previous = enter(slot);
+        try {
+            ctx.sendUpstream(e);
+        } finally {
+            leave(previous);
+            slot.release();
+        }
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        Slot slot = current.get();
+        synchronized (this) {
+            if (slot == null || slot.handler() != this) {
+                slot = next;
+            }
+            if (closed) {
+                discard(e);
+            } else if (slot == head) {
+                ctx.sendDownstream(e);
+            } else {
+                this.ctx = ctx;
+                if (Logger.isTraceEnabled()) {
+                    Logger.trace("Response %s held until response %s is written", slot.sequence, head.sequence);
+                }
+                slot.pending.add(e);
+            }
+        }
+    }
+
+    /**
+     * Write the responses that were waiting for a completed one
+     */
+    synchronized void complete(Slot slot) {
+        slot.completed = true;
+        while (head.completed && head.following != null) {
+            head = head.following;
+            for (MessageEvent e : head.pending) {
+                if (closed) {
+                    discard(e);
+                } else {
+                    ctx.sendDownstream(e);
+                }
+            }
+            head.pending.clear();
+        }
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        List<MessageEvent> discarded = new ArrayList<MessageEvent>();
+        synchronized (this) {
+            closed = true;
+            for (Slot slot = head; slot != null; slot = slot.following) {
+                discarded.addAll(slot.pending);
+                slot.pending.clear();
+            }
+        }
+        for (MessageEvent pending : discarded) {
+            discard(pending);
+        }
+        super.channelClosed(ctx, e);
+    }
+
+    /**
+     * Fail a write that will never be made, releasing its content
+     */
+    static void discard(MessageEvent e) {
+        Object message = e.getMessage();
+        try {
+            if (message instanceof ChunkedInput) {
+                ((ChunkedInput) message).close();
+            } else if (message instanceof FileRegion) {
+                ((FileRegion) message).releaseExternalResources();
+            }
+        } catch (Exception ex) {
+            Logger.debug(ex, "Cannot release a discarded response");
+        }
+        e.getFuture().setFailure(new ClosedChannelException());
+    }
+}
@@ -1,6 +1,5 @@
 package play.server;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
@@ -9,20 +8,23 @@ import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.codec.frame.TooLongFrameException;
 import org.jboss.netty.handler.codec.http.*;
 import org.jboss.netty.handler.codec.http.websocketx.*;
-import org.jboss.netty.handler.stream.ChunkedFile;
+import org.jboss.netty.handler.ssl.SslHandler;
 import org.jboss.netty.handler.stream.ChunkedInput;
 import org.jboss.netty.handler.stream.ChunkedStream;
 import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import play.CorePlugin;
 import play.Invoker;
 import play.Invoker.InvocationContext;
 import play.Logger;
 import play.Play;
 import play.data.validation.Validation;
+import play.exceptions.DeadlineExceededException;
 import play.exceptions.PlayException;
 import play.exceptions.UnexpectedException;
 import play.i18n.Messages;
 import play.libs.F.Action;
 import play.libs.F.Promise;
+import play.libs.Metrics;
 import play.libs.MimeTypes;
 import play.mvc.*;
 import play.mvc.Http.Request;
@@ -32,12 +34,15 @@ import play.mvc.results.RenderStatic;
 import play.templates.JavaExtensions;
 import play.templates.TemplateLoader;
 import play.utils.HTTP;
+import play.utils.LazyMap;
 import play.utils.Utils;
 import play.vfs.VirtualFile;
 
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -45,6 +50,9 @@ import java.text.ParseException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.jboss.netty.buffer.ChannelBuffers.wrappedBuffer;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.*;
@@ -77,6 +85,43 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         exposePlayServer = !"false".equals(Play.configuration.getProperty("http.exposePlayServer"));
     }
 
+    /**
+     * If true (the default), files are sent with a zero-copy transfer on plain HTTP channels.
+     * Set <code>play.netty.zeroCopy = false</code> to send them by chunks, as on HTTPS channels.
+     */
+    private final static boolean zeroCopy = !"false".equals(Play.configuration.getProperty("play.netty.zeroCopy"));
+    /**
+     * Size of the chunks files are sent by, when not using a zero-copy transfer
+     */
+    private final static int fileChunkSize = Integer.parseInt(Play.configuration.getProperty("play.netty.fileChunkSize", "65536"));
+    /**
+     * The small static files, kept in memory. Null if disabled.
+     */
+    final static StaticCache staticCache = StaticCache.create();
+    /**
+     * Maximum number of requests waiting for an invocation thread, 0 for no limit. Above, the requests are rejected with
+     * a 503 Service Unavailable response.
+     */
+    static int maxQueue = Integer.parseInt(Play.configuration.getProperty("play.netty.maxQueue", "0"));
+    /**
+     * Maximum time a request can wait for an invocation thread, in milliseconds, 0 for no limit. A request that waited
+     * longer is rejected with a 503 instead of being executed, as its client has probably given up.
+     */
+    static long queueTimeout = Long.parseLong(Play.configuration.getProperty("play.netty.queueTimeout", "0"));
+    /**
+     * Time given to a request from its reception, in milliseconds, 0 for no limit, unless its action has a
+     * {@link Deadline}. Its database queries, web service calls and cache reads are given the time left.
+     */
+    private final static long requestDeadline = Long.parseLong(Play.configuration.getProperty("play.deadline", "0"));
+    /**
+     * The Retry-After header of the 503 responses, in seconds
+     */
+    private final static String retryAfter = Play.configuration.getProperty("play.netty.retryAfter", "1");
+    /**
+     * Number of requests waiting for an invocation thread
+     */
+    final static AtomicInteger queued = new AtomicInteger();
+
     @Override
     public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent messageEvent) throws Exception {
         if (Logger.isTraceEnabled()) {
@@ -98,13 +143,15 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
             // Plain old HttpRequest
             try {
+                long start = System.nanoTime();
                 final Request request = parseRequest(ctx, nettyRequest, messageEvent);
+                Metrics.record(Metrics.Phase.PARSE, start);
 
                 final Response response = new Response();
                 Http.Response.current.set(response);
 
-                // Buffered in memory output
-                response.out = new ByteArrayOutputStream();
+                // Buffered in memory output, in a pooled array
+                response.out = new ResponseOutputStream();
 
                 // Direct output (will be set later)
                 response.direct = null;
@@ -121,10 +168,22 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 boolean raw = Play.pluginCollection.rawInvocation(request, response);
                 if (raw) {
                     copyResponse(ctx, request, response, nettyRequest);
+                } else if (queued.incrementAndGet() > maxQueue && maxQueue > 0) {
+                    queued.decrementAndGet();
+                    serve503(ctx, nettyRequest);
+                    closeBody(request);
                 } else {
 
                     // Deleguate to Play framework
-                    Invoker.invoke(new NettyInvocation(request, response, ctx, nettyRequest, messageEvent));
+                    NettyInvocation invocation = new NettyInvocation(request, response, ctx, nettyRequest, messageEvent);
+                    try {
+                        Invoker.invoke(invocation);
+                    } catch (RuntimeException e) {
+                        queued.decrementAndGet();
+                        invocation.release();
+                        closeBody(request);
+                        throw e;
+                    }
 
                 }
 
@@ -153,6 +212,24 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         private final Response response;
         private final HttpRequest nettyRequest;
         private final MessageEvent event;
+        private final long queuedAt = System.nanoTime();
+        /**
+         * The deadline of the invocation, kept for its exceptions once its context is gone
+         */
+        private long deadline;
+        private boolean waiting = true;
+        /**
+         * Number of times the invocation ran: it runs again when it is resumed or moved to its pool
+         */
+        private int runs;
+        /**
+         * The last run that handed the invocation over to another thread, which may already run it
+         */
+        private volatile int handedOff;
+        /**
+         * The place of the response on a pipelined connection, held until the response is written
+         */
+        private final PipeliningHandler.Slot slot = PipeliningHandler.current();
 
         public NettyInvocation(Request request, Response response, ChannelHandlerContext ctx, HttpRequest nettyRequest, MessageEvent e) {
             this.ctx = ctx;
@@ -160,6 +237,9 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             this.response = response;
             this.nettyRequest = nettyRequest;
             this.event = e;
+            if (slot != null) {
+                slot.retain();
+            }
         }
 
         @Override
@@ -207,6 +287,43 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 return false;
             }
 
+            // Give up the requests whose client has probably given up too
+            long deadline = InvocationContext.current().getDeadline();
+            if (deadline != 0 && deadline - System.nanoTime() <= 0) {
+                if (Logger.isDebugEnabled()) {
+                    Logger.debug("Request %s %s dropped after its deadline", request.method, request.url);
+                }
+                CorePlugin.completeRouteSample(503);
+                serve503(ctx, nettyRequest);
+                return false;
+            }
+
+            // Move to the pool of the action
+            Pool pool = InvocationContext.current().getAnnotation(Pool.class);
+            if (pool != null) {
+                int previous = handedOff;
+                handedOff = runs;
+                try {
+                    if (Invoker.invoke(this, pool.value()) != null) {
+                        if (Logger.isTraceEnabled()) {
+                            Logger.trace("init: end false, moved to pool %s", pool.value());
+                        }
+                        return false;
+                    }
+                    handedOff = previous;
+                } catch (RejectedExecutionException e) {
+                    handedOff = previous;
+                    if (!Invoker.pool(pool.value()).callerRuns) {
+                        if (Logger.isDebugEnabled()) {
+                            Logger.debug("Request %s %s rejected by the full pool %s", request.method, request.url, pool.value());
+                        }
+                        CorePlugin.completeRouteSample(503);
+                        serve503(ctx, nettyRequest);
+                        return false;
+                    }
+                }
+            }
+
             if (Logger.isTraceEnabled()) {
                 Logger.trace("init: end true");
             }
@@ -216,26 +333,78 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         @Override
         public InvocationContext getInvocationContext() {
             ActionInvoker.resolve(request, response);
-            return new InvocationContext(Http.invocationType,
+            InvocationContext context = new InvocationContext(Http.invocationType,
                     request.invokedMethod.getAnnotations(),
                     request.invokedMethod.getDeclaringClass().getAnnotations());
+            Deadline deadline = context.getAnnotation(Deadline.class);
+            long budget = deadline != null ? deadline.value() : requestDeadline;
+            if (budget > 0) {
+                context.setDeadline(queuedAt + TimeUnit.MILLISECONDS.toNanos(budget));
+            }
+            this.deadline = context.getDeadline();
+            return context;
         }
 
         @Override
         public void run() {
+            PipeliningHandler.Slot previous = PipeliningHandler.enter(slot);
+            int run = ++runs;
             try {
-                if (Logger.isTraceEnabled()) {
-                    Logger.trace("run: begin");
+                if (waiting) {
+                    waiting = false;
+                    queued.decrementAndGet();
+                    Metrics.record(Metrics.Phase.QUEUE, queuedAt);
+                    long waited = (System.nanoTime() - queuedAt) / 1000000;
+                    if (queueTimeout > 0 && waited > queueTimeout) {
+                        if (Logger.isDebugEnabled()) {
+                            Logger.debug("Request %s %s dropped after waiting %s ms", request.method, request.url, waited);
+                        }
+                        serve503(ctx, nettyRequest);
+                        closeBody(request);
+                        release();
+                        return;
+                    }
                 }
-                super.run();
-            } catch (Exception e) {
-                serve500(e, ctx, nettyRequest);
+                try {
+                    if (Logger.isTraceEnabled()) {
+                        Logger.trace("run: begin");
+                    }
+                    super.run();
+                } catch (Exception e) {
+                    if (DeadlineExceededException.isCause(e, deadline != 0)) {
+                        serve503(ctx, nettyRequest);
+                    } else {
+                        serve500(e, ctx, nettyRequest);
+                    }
+                } finally {
+                    if (handedOff < run) {
+                        closeBody(request);
+                        release();
+                    }
+                }
+            } finally {
+                PipeliningHandler.leave(previous);
             }
             if (Logger.isTraceEnabled()) {
                 Logger.trace("run: end");
             }
         }
 
+        @Override
+        public void suspend(Invoker.Suspend suspendRequest) {
+            handedOff = runs;
+            super.suspend(suspendRequest);
+        }
+
+        /**
+         * The response is completely written: the next one on the connection can be
+         */
+        void release() {
+            if (slot != null) {
+                slot.release();
+            }
+        }
+
         @Override
         public void execute() throws Exception {
             if (!ctx.getChannel().isConnected()) {
@@ -349,16 +518,17 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             Logger.trace("writeResponse: begin");
         }
 
-        byte[] content = null;
+        ChannelBuffer buf;
 
         final boolean keepAlive = isKeepAlive(nettyRequest);
         if (nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
-            content = new byte[0];
+            buf = ChannelBuffers.EMPTY_BUFFER;
+        } else if (response.out instanceof ResponseOutputStream) {
+            // No copy, the array is recycled once written
+            buf = ((ResponseOutputStream) response.out).buffer();
         } else {
-            content = response.out.toByteArray();
+            buf = ChannelBuffers.wrappedBuffer(response.out.toByteArray());
         }
-
-        ChannelBuffer buf = ChannelBuffers.copiedBuffer(content);
         nettyResponse.setContent(buf);
 
         if (Logger.isTraceEnabled()) {
@@ -368,6 +538,9 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         setContentLength(nettyResponse, response.out.size());
 
         ChannelFuture f = ctx.getChannel().write(nettyResponse);
+        if (response.out instanceof ResponseOutputStream) {
+            ((ResponseOutputStream) response.out).recycleAfter(f);
+        }
 
         // Decide whether to close the connection or not.
         if (!keepAlive) {
@@ -383,6 +556,9 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         if (Logger.isTraceEnabled()) {
             Logger.trace("copyResponse: begin");
         }
+        long start = System.nanoTime();
+
+        addContentEtag(request, response);
 
         // Decide whether to close the connection or not.
 
@@ -433,25 +609,14 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                     try {
                         long fileLength = raf.length();
 
-                        if (!nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
-                            if (Logger.isTraceEnabled()) {
-                                Logger.trace("file length is [" + fileLength + "]");
-                            }
-                            setContentLength(nettyResponse, fileLength);
+                        if (Logger.isTraceEnabled()) {
+                            Logger.trace("file length is [" + fileLength + "]");
                         }
 
                         Channel ch = ctx.getChannel();
 
-                        // Write the initial line and the header.
-                        ChannelFuture writeFuture = ch.write(nettyResponse);
-
-                        // Write the content.
-                        // If it is not a HEAD
-                        if (!nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
-                            writeFuture = ch.write(new ChunkedFile(raf, 0, fileLength, 8192));
-                        } else {
-                            raf.close();
-                        }
+                        // Write the initial line, the header and the content.
+                        ChannelFuture writeFuture = writeFileResponse(ch, nettyRequest, nettyResponse, raf.getChannel(), 0, fileLength, file.lastModified());
                         if (!keepAlive) {
                             // Close the connection when the whole content is written out.
                             writeFuture.addListener(ChannelFutureListener.CLOSE);
@@ -469,6 +634,15 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             } catch (Exception e) {
                 throw e;
             }
+        } else if (is instanceof FileInputStream && nettyResponse.getStatus().equals(HttpResponseStatus.OK)) {
+            // ie. a Blob, sent as a file from its current position
+            FileChannel channel = ((FileInputStream) is).getChannel();
+            long position = channel.position();
+            long length = nettyResponse.containsHeader(CONTENT_LENGTH) ? Long.parseLong(nettyResponse.getHeader(CONTENT_LENGTH)) : channel.size() - position;
+            ChannelFuture writeFuture = writeFileResponse(ctx.getChannel(), nettyRequest, nettyResponse, channel, position, length, 0);
+            if (!keepAlive) {
+                writeFuture.addListener(ChannelFutureListener.CLOSE);
+            }
         } else if (is != null) {
             ChannelFuture writeFuture = ctx.getChannel().write(nettyResponse);
             if (!nettyRequest.getMethod().equals(HttpMethod.HEAD) && !nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
@@ -492,6 +666,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         } else {
             writeResponse(ctx, response, nettyResponse, nettyRequest);
         }
+        Metrics.record(Metrics.Phase.WRITE, start);
         if (Logger.isTraceEnabled()) {
             Logger.trace("copyResponse: end");
         }
@@ -550,7 +725,10 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
         InputStream body = null;
         ChannelBuffer b = nettyRequest.getContent();
-        if (b instanceof FileChannelBuffer) {
+        if (b instanceof StreamedChannelBuffer) {
+            // Read by the action while it is received
+            body = ((StreamedChannelBuffer) b).stream;
+        } else if (b instanceof FileChannelBuffer) {
             FileChannelBuffer buffer = (FileChannelBuffer) b;
             // An error occurred
             Integer max = Integer.valueOf(Play.configuration.getProperty("play.netty.maxContentLength", "-1"));
@@ -561,10 +739,8 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             }
 
         } else {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            IOUtils.copy(new ChannelBufferInputStream(b), out);
-            byte[] n = out.toByteArray();
-            body = new ByteArrayInputStream(n);
+            // Reads the body in memory without copying it
+            body = new ChannelBufferInputStream(b);
         }
 
         String host = nettyRequest.getHeader(HOST);
@@ -607,8 +783,8 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 port,
                 domain,
                 secure,
-                getHeaders(nettyRequest),
-                getCookies(nettyRequest));
+                new LazyHeaders(nettyRequest),
+                new LazyCookies(nettyRequest));
 
 
         if (Logger.isTraceEnabled()) {
@@ -655,6 +831,80 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
     }
 
 
+    /**
+     * The request headers, parsed on their first access. A single header can be read without parsing the others.
+     */
+    static class LazyHeaders extends LazyMap<String, Http.Header> {
+
+        private final transient HttpRequest nettyRequest;
+        /**
+         * The headers read one by one before the map is loaded
+         */
+        private Map<String, Http.Header> read;
+
+        LazyHeaders(HttpRequest nettyRequest) {
+            this.nettyRequest = nettyRequest;
+        }
+
+        @Override
+        protected Map<String, Http.Header> load() {
+            Map<String, Http.Header> headers = getHeaders(nettyRequest);
+            if (read != null) {
+                // Keep the headers already read, as they may have been changed
+                headers.putAll(read);
+                read = null;
+            }
+            return headers;
+        }
+
+        @Override
+        public Http.Header get(Object key) {
+            if (isLoaded() || !(key instanceof String)) {
+                return super.get(key);
+            }
+            String name = (String) key;
+            if (read != null && read.containsKey(name)) {
+                return read.get(name);
+            }
+            // The names are lower case
+            if (!name.equals(name.toLowerCase())) {
+                return null;
+            }
+            List<String> values = nettyRequest.getHeaders(name);
+            if (values.isEmpty()) {
+                return null;
+            }
+            Http.Header header = new Http.Header(name, new ArrayList<String>(values));
+            if (read == null) {
+                read = new HashMap<String, Http.Header>(4);
+            }
+            read.put(name, header);
+            return header;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return isLoaded() ? super.containsKey(key) : get(key) != null;
+        }
+    }
+
+    /**
+     * The request cookies, decoded on their first access
+     */
+    static class LazyCookies extends LazyMap<String, Http.Cookie> {
+
+        private final transient HttpRequest nettyRequest;
+
+        LazyCookies(HttpRequest nettyRequest) {
+            this.nettyRequest = nettyRequest;
+        }
+
+        @Override
+        protected Map<String, Http.Cookie> load() {
+            return getCookies(nettyRequest);
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
         try {
@@ -726,6 +976,28 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         return binding;
     }
 
+    /**
+     * Discard what the action did not read of a streamed body, so that the next request can be received
+     */
+    static void closeBody(Request request) {
+        if (request.body instanceof BodyStream) {
+            ((BodyStream) request.body).close();
+        }
+    }
+
+    /**
+     * Reject a request the server is too busy to handle
+     */
+    static void serve503(ChannelHandlerContext ctx, HttpRequest nettyRequest) {
+        HttpResponse nettyResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SERVICE_UNAVAILABLE);
+        nettyResponse.setHeader(RETRY_AFTER, retryAfter);
+        setContentLength(nettyResponse, 0);
+        ChannelFuture writeFuture = ctx.getChannel().write(nettyResponse);
+        if (!isKeepAlive(nettyRequest)) {
+            writeFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
     // TODO: add request and response as parameter
     public static void serve500(Exception e, ChannelHandlerContext ctx, HttpRequest nettyRequest) {
         if (Logger.isTraceEnabled()) {
@@ -837,23 +1109,46 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             nettyResponse.setHeader(SERVER, signature);
         }
         try {
-            VirtualFile file = Play.getVirtualFile(renderStatic.file);
-            if (file != null && file.exists() && file.isDirectory()) {
-                file = file.child("index.html");
-                if (file != null) {
-                    renderStatic.file = file.relativePath();
+            String path = renderStatic.file;
+            StaticCache.Entry cached = staticCache == null ? null : staticCache.get(path);
+            VirtualFile file;
+            String indexPath = null;
+            if (cached != null) {
+                file = cached.file;
+                indexPath = cached.indexPath;
+            } else {
+                file = Play.getVirtualFile(renderStatic.file);
+                if (file != null && file.exists() && file.isDirectory()) {
+                    file = file.child("index.html");
+                    if (file != null) {
+                        indexPath = file.relativePath();
+                    }
                 }
             }
+            if (indexPath != null) {
+                renderStatic.file = indexPath;
+            }
             if ((file == null || !file.exists())) {
                 serve404(new NotFound("The file " + renderStatic.file + " does not exist"), ctx, request, nettyRequest);
             } else {
                 boolean raw = Play.pluginCollection.serveStatic(file, Request.current(), Response.current());
                 if (raw) {
                     copyResponse(ctx, request, response, nettyRequest);
+                } else if (cached != null || (staticCache != null && (cached = staticCache.load(path, file, indexPath)) != null)) {
+                    serveCached(cached, nettyResponse, nettyRequest, e);
                 } else {
                     final File localFile = file.getRealFile();
                     final boolean keepAlive = isKeepAlive(nettyRequest);
-                    nettyResponse = addEtag(nettyRequest, nettyResponse, localFile);
+                    File servedFile = localFile;
+                    File gzipped = precompressed(localFile);
+                    if (gzipped != null) {
+                        nettyResponse.setHeader(VARY, ACCEPT_ENCODING);
+                        if (CompressionHandler.accepts(nettyRequest.getHeader(ACCEPT_ENCODING), "gzip")) {
+                            nettyResponse.setHeader(CONTENT_ENCODING, HttpHeaders.Values.GZIP);
+                            servedFile = gzipped;
+                        }
+                    }
+                    nettyResponse = addEtag(nettyRequest, nettyResponse, servedFile);
 
                     if (nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
 
@@ -867,7 +1162,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                         }
                     } else {
 
-                        final RandomAccessFile raf = new RandomAccessFile(localFile, "r");
+                        final RandomAccessFile raf = new RandomAccessFile(servedFile, "r");
                         try {
                             long fileLength = raf.length();
 
@@ -876,27 +1171,16 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                                 Logger.trace("content type " + (MimeTypes.getContentType(localFile.getName(), "text/plain")));
                             }
 
-                            if (!nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
-                                // Add 'Content-Length' header only for a keep-alive connection.
-                                if (Logger.isTraceEnabled()) {
-                                    Logger.trace("file length " + fileLength);
-                                }
-                                setContentLength(nettyResponse, fileLength);
+                            if (Logger.isTraceEnabled()) {
+                                Logger.trace("file length " + fileLength);
                             }
 
                             nettyResponse.setHeader(CONTENT_TYPE, (MimeTypes.getContentType(localFile.getName(), "text/plain")));
 
                             Channel ch = e.getChannel();
 
-                            // Write the initial line and the header.
-                            ChannelFuture writeFuture = ch.write(nettyResponse);
-
-                            // Write the content.
-                            if (!nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
-                                writeFuture = ch.write(new ChunkedFile(raf, 0, fileLength, 8192));
-                            } else {
-                                raf.close();
-                            }
+                            // Write the initial line, the header and the content.
+                            ChannelFuture writeFuture = writeFileResponse(ch, nettyRequest, nettyResponse, raf.getChannel(), 0, fileLength, servedFile.lastModified());
 
                             if (!keepAlive) {
                                 // Close the connection when the whole content is written out.
@@ -934,6 +1218,233 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         }
     }
 
+    /**
+     * Serve a static file from the memory
+     */
+    static void serveCached(StaticCache.Entry cached, HttpResponse nettyResponse, HttpRequest nettyRequest, MessageEvent e) {
+        StaticCache.Variant variant = cached.identity;
+        if (cached.gzipped != null) {
+            nettyResponse.setHeader(VARY, ACCEPT_ENCODING);
+            if (CompressionHandler.accepts(nettyRequest.getHeader(ACCEPT_ENCODING), "gzip")) {
+                variant = cached.gzipped;
+            }
+        }
+        addCacheControl(nettyResponse);
+        if (Play.configuration.getProperty("http.useETag", "true").equals("true")) {
+            nettyResponse.setHeader(ETAG, variant.etag);
+        }
+        boolean keepAlive = isKeepAlive(nettyRequest);
+        Channel ch = e.getChannel();
+        ChannelFuture writeFuture;
+        if (!isModified(variant.etag, cached.lastModified, nettyRequest)) {
+            if (nettyRequest.getMethod().equals(HttpMethod.GET)) {
+                nettyResponse.setStatus(HttpResponseStatus.NOT_MODIFIED);
+            }
+            writeFuture = ch.write(nettyResponse);
+        } else {
+            variant.addHeaders(nettyResponse);
+            // Shares the cached bytes
+            ChannelBuffer content = contentRanges(nettyRequest, nettyResponse, variant.content, cached.lastModified);
+            setContentLength(nettyResponse, content.readableBytes());
+            if (!nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
+                nettyResponse.setContent(content);
+            }
+            writeFuture = ch.write(nettyResponse);
+        }
+        if (!keepAlive) {
+            writeFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * Get the byte ranges requested, if any, of a content sent with a 200 status. Sets the Accept-Ranges header, and the
+     * status of the partial response.
+     *
+     * @param length       The complete content length
+     * @param lastModified The content last modification date, to check If-Range, or 0
+     * @return null to send the whole content
+     */
+    static ByteRanges ranges(HttpRequest nettyRequest, HttpResponse nettyResponse, long length, long lastModified) {
+        if (!nettyResponse.getStatus().equals(HttpResponseStatus.OK)) {
+            return null;
+        }
+        nettyResponse.setHeader(ACCEPT_RANGES, HttpHeaders.Values.BYTES);
+        if (!nettyRequest.getMethod().equals(HttpMethod.GET)) {
+            return null;
+        }
+        ByteRanges ranges = ByteRanges.parse(nettyRequest.getHeader(RANGE), length);
+        if (ranges == null || !ByteRanges.ifRangeMatches(nettyRequest.getHeader(IF_RANGE), nettyResponse.getHeader(ETAG), lastModified)) {
+            return null;
+        }
+        if (ranges.isSatisfiable()) {
+            nettyResponse.setStatus(HttpResponseStatus.PARTIAL_CONTENT);
+        } else {
+            nettyResponse.setStatus(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            nettyResponse.setHeader(CONTENT_RANGE, "bytes */" + length);
+        }
+        return ranges;
+    }
+
+    /**
+     * Get the byte ranges requested of an in-memory content, or the whole content
+     */
+    static ChannelBuffer contentRanges(HttpRequest nettyRequest, HttpResponse nettyResponse, ChannelBuffer content, long lastModified) {
+        ByteRanges ranges = ranges(nettyRequest, nettyResponse, content.readableBytes(), lastModified);
+        if (ranges == null) {
+            return content.duplicate();
+        }
+        if (!ranges.isSatisfiable()) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        if (ranges.size() == 1) {
+            nettyResponse.setHeader(CONTENT_RANGE, ranges.contentRange(0));
+            return content.slice(content.readerIndex() + (int) ranges.starts[0], (int) ranges.length(0));
+        }
+        String contentType = nettyResponse.getHeader(CONTENT_TYPE);
+        nettyResponse.setHeader(CONTENT_TYPE, "multipart/byteranges; boundary=" + ranges.boundary);
+        ChannelBuffer[] parts = new ChannelBuffer[ranges.size() * 2 + 1];
+        for (int i = 0; i < ranges.size(); i++) {
+            parts[i * 2] = ranges.partHeader(i, contentType);
+            parts[i * 2 + 1] = content.slice(content.readerIndex() + (int) ranges.starts[i], (int) ranges.length(i));
+        }
+        parts[parts.length - 1] = ranges.closing();
+        return ChannelBuffers.wrappedBuffer(parts);
+    }
+
+    /**
+     * Write the response to a file download, with the whole file or the byte ranges of it requested, and close the file.
+     *
+     * @param offset       The content position in the file
+     * @param length       The content length
+     * @param lastModified The content last modification date, to check If-Range, or 0
+     */
+    static ChannelFuture writeFileResponse(Channel ch, HttpRequest nettyRequest, HttpResponse nettyResponse, final FileChannel file, long offset, long length, long lastModified) throws IOException {
+        boolean head = nettyRequest.getMethod().equals(HttpMethod.HEAD);
+        ByteRanges ranges = ranges(nettyRequest, nettyResponse, length, lastModified);
+        ChannelFuture writeFuture;
+        if (ranges == null) {
+            setContentLength(nettyResponse, length);
+            writeFuture = ch.write(nettyResponse);
+            if (!head) {
+                return writeFile(ch, file, offset, length, true);
+            }
+        } else if (!ranges.isSatisfiable()) {
+            setContentLength(nettyResponse, 0);
+            writeFuture = ch.write(nettyResponse);
+        } else if (ranges.size() == 1) {
+            nettyResponse.setHeader(CONTENT_RANGE, ranges.contentRange(0));
+            setContentLength(nettyResponse, ranges.length(0));
+            ch.write(nettyResponse);
+            return writeFile(ch, file, offset + ranges.starts[0], ranges.length(0), true);
+        } else {
+            String contentType = nettyResponse.getHeader(CONTENT_TYPE);
+            nettyResponse.setHeader(CONTENT_TYPE, "multipart/byteranges; boundary=" + ranges.boundary);
+            setContentLength(nettyResponse, ranges.multipartLength(contentType));
+            ch.write(nettyResponse);
+            for (int i = 0; i < ranges.size(); i++) {
+                ch.write(ranges.partHeader(i, contentType));
+                writeFile(ch, file, offset + ranges.starts[i], ranges.length(i), false);
+            }
+            writeFuture = ch.write(ranges.closing());
+            writeFuture.addListener(new ChannelFutureListener() {
+
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    file.close();
+                }
+            });
+            return writeFuture;
+        }
+        file.close();
+        return writeFuture;
+    }
+
+    /**
+     * Write a part of a file. On plain channels, it is transferred directly from the file system cache to the socket.
+     * Through SSL it has to be encrypted, so it is read by chunks.
+     *
+     * @param close Whether to close the file once written
+     */
+    static ChannelFuture writeFile(Channel ch, final FileChannel file, long offset, long length, final boolean close) throws IOException {
+        if (zeroCopy && ch.getPipeline().get(SslHandler.class) == null) {
+            ChannelFuture writeFuture = ch.write(new DefaultFileRegion(file, offset, length));
+            if (close) {
+                writeFuture.addListener(new ChannelFutureListener() {
+
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        file.close();
+                    }
+                });
+            }
+            return writeFuture;
+        }
+        return ch.write(new FileChunks(file, offset, length, fileChunkSize, close));
+    }
+
+    /**
+     * A part of a file, read by chunks. Unlike ChunkedNioFile, it does not move the file position, so that several
+     * parts of a same file can be queued.
+     */
+    static class FileChunks implements ChunkedInput {
+
+        final FileChannel file;
+        final long end;
+        final int chunkSize;
+        final boolean close;
+        long position;
+
+        FileChunks(FileChannel file, long offset, long length, int chunkSize, boolean close) {
+            this.file = file;
+            this.position = offset;
+            this.end = offset + length;
+            this.chunkSize = chunkSize;
+            this.close = close;
+        }
+
+        public boolean hasNextChunk() throws Exception {
+            return position < end && file.isOpen();
+        }
+
+        public Object nextChunk() throws Exception {
+            if (position >= end) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(chunkSize, end - position));
+            while (buffer.hasRemaining()) {
+                if (file.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of file");
+                }
+            }
+            position += buffer.capacity();
+            buffer.flip();
+            return ChannelBuffers.wrappedBuffer(buffer);
+        }
+
+        public boolean isEndOfInput() throws Exception {
+            return !hasNextChunk();
+        }
+
+        public void close() throws Exception {
+            if (close) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Get the gzipped version of a static file, ie. app.js.gz for app.js, if the responses compression is enabled
+     */
+    static File precompressed(File file) {
+        if (!CompressionHandler.isEnabled()) {
+            return null;
+        }
+        File gzipped = new File(file.getPath() + ".gz");
+        // Ignore it if it has not been updated with the file
+        if (gzipped.isFile() && gzipped.lastModified() >= file.lastModified()) {
+            return gzipped;
+        }
+        return null;
+    }
+
     public static boolean isModified(String etag, long last, HttpRequest nettyRequest) {
 
         if (nettyRequest.containsHeader(IF_NONE_MATCH)) {
@@ -962,7 +1473,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         return true;
     }
 
-    private static HttpResponse addEtag(HttpRequest nettyRequest, HttpResponse httpResponse, File file) {
+    private static void addCacheControl(HttpResponse httpResponse) {
         if (Play.mode == Play.Mode.DEV) {
             httpResponse.setHeader(CACHE_CONTROL, "no-cache");
         } else {
@@ -976,6 +1487,10 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             	}
 			}
         }
+    }
+
+    private static HttpResponse addEtag(HttpRequest nettyRequest, HttpResponse httpResponse, File file) {
+        addCacheControl(httpResponse);
         boolean useEtag = Play.configuration.getProperty("http.useETag", "true").equals("true");
         long last = file.lastModified();
         final String etag = "\"" + last + "-" + file.hashCode() + "\"";
@@ -996,6 +1511,35 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         return httpResponse;
     }
 
+    /**
+     * Tag the rendered content with an ETag, if enabled for the action, and turn the response into a 304 Not Modified
+     * if the client already has this content.
+     */
+    static void addContentEtag(Request request, Response response) {
+        if (response.status != Http.StatusCode.OK || response.direct != null || response.out == null
+                || !(request.method.equals("GET") || request.method.equals("HEAD"))) {
+            return;
+        }
+        boolean enabled = (request.invokedMethod != null && request.invokedMethod.isAnnotationPresent(play.cache.ETag.class))
+                || Play.configuration.getProperty("http.dynamicETag", "false").equals("true");
+        if (!enabled || !Play.configuration.getProperty("http.useETag", "true").equals("true")) {
+            return;
+        }
+        for (String name : response.headers.keySet()) {
+            if (name.equalsIgnoreCase(ETAG)) {
+                // Set by the action
+                return;
+            }
+        }
+        String etag = HTTP.etag(response.out);
+        response.setHeader("Etag", etag);
+        Http.Header ifNoneMatch = request.headers.get("if-none-match");
+        if (ifNoneMatch != null && HTTP.etagMatches(ifNoneMatch.value(), etag)) {
+            response.status = Http.StatusCode.NOT_MODIFIED;
+            response.out.reset();
+        }
+    }
+
     public static boolean isKeepAlive(HttpMessage message) {
         return HttpHeaders.isKeepAlive(message) && message.getProtocolVersion().equals(HttpVersion.HTTP_1_1);
     }
@@ -1010,7 +1554,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
     static class LazyChunkedInput implements org.jboss.netty.handler.stream.ChunkedInput {
 
         private boolean closed = false;
-        private ConcurrentLinkedQueue<byte[]> nextChunks = new ConcurrentLinkedQueue<byte[]>();
+        private ConcurrentLinkedQueue<HttpChunk> nextChunks = new ConcurrentLinkedQueue<HttpChunk>();
 
         public boolean hasNextChunk() throws Exception {
             return !nextChunks.isEmpty();
@@ -1020,7 +1564,8 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             if (nextChunks.isEmpty()) {
                 return null;
             }
-            return wrappedBuffer(nextChunks.poll());
+            // Framed by the encoder, as the response is chunked
+            return nextChunks.poll();
         }
 
         public boolean isEndOfInput() throws Exception {
@@ -1029,7 +1574,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
         public void close() throws Exception {
             if (!closed) {
-                nextChunks.offer("0\r\n\r\n".getBytes());
+                nextChunks.offer(HttpChunk.LAST_CHUNK);
             }
             closed = true;
         }
@@ -1047,13 +1592,10 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 bytes = message.getBytes(Response.current().encoding);
             }
 
-            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-            byteStream.write(Integer.toHexString(bytes.length).getBytes());
-            final byte[] crlf = new byte[]{(byte)'\r', (byte)'\n'};
-            byteStream.write(crlf);
-            byteStream.write(bytes);
-            byteStream.write(crlf);
-            nextChunks.offer( byteStream.toByteArray());
+            // An empty chunk would end the response
+            if (bytes.length > 0) {
+                nextChunks.offer(new DefaultHttpChunk(wrappedBuffer(bytes)));
+            }
         }
     }
 
@@ -0,0 +1,87 @@
+package play.server;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import play.Play;
+
+/**
+ * The body of a response, written in a pooled array and handed to Netty without being copied.
+ * <p/>
+ * The arrays are taken from a pool of <code>play.netty.responseBuffers</code> arrays, and given back once the response
+ * is written. An array that grew larger than {@link #MAX_POOLED} bytes is left to the garbage collector.
+ */
+public class ResponseOutputStream extends ByteArrayOutputStream {
+
+    /**
+     * Above this size, the arrays are not pooled
+     */
+    static final int MAX_POOLED = 1024 * 1024;
+
+    /**
+     * Maximum number of arrays kept in the pool, 0 to disable the pool
+     */
+    static final int poolSize = Integer.parseInt(Play.configuration.getProperty("play.netty.responseBuffers", "64"));
+    /**
+     * Initial size of the arrays
+     */
+    static final int bufferSize = Integer.parseInt(Play.configuration.getProperty("play.netty.responseBufferSize", "8192"));
+
+    static final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+    static final AtomicInteger pooled = new AtomicInteger();
+
+    static final byte[] EMPTY = new byte[0];
+
+    public ResponseOutputStream() {
+        super(0);
+        byte[] array = pool.poll();
+        if (array != null) {
+            pooled.decrementAndGet();
+        } else {
+            array = new byte[bufferSize];
+        }
+        this.buf = array;
+    }
+
+    /**
+     * Get the content, backed by the array of this stream: it must not be written again
+     */
+    public synchronized ChannelBuffer buffer() {
+        return ChannelBuffers.wrappedBuffer(buf, 0, count);
+    }
+
+    /**
+     * Give the array of this stream back to the pool once a write completes
+     */
+    public void recycleAfter(ChannelFuture future) {
+        future.addListener(new ChannelFutureListener() {
+
+            public void operationComplete(ChannelFuture future) throws Exception {
+                recycle();
+            }
+        });
+    }
+
+    /**
+     * Give the array of this stream back to the pool: the content is lost
+     */
+    public synchronized void recycle() {
+        byte[] array = buf;
+        buf = EMPTY;
+        count = 0;
+        if (array.length == 0 || array.length > MAX_POOLED) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= poolSize) {
+            pool.offer(array);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
@@ -16,6 +16,7 @@ import play.Play;
 import play.Play.Mode;
 import play.libs.IO;
 import play.server.ssl.SslHttpServerPipelineFactory;
+import play.utils.PThreadFactory;
 import play.vfs.VirtualFile;
 
 public class Server {
@@ -65,9 +66,7 @@ public class Server {
             Logger.error(e, "Could not understand https.address");
             Play.fatalServerErrorOccurred();
         }
-        ServerBootstrap bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(
-                Executors.newCachedThreadPool(), Executors.newCachedThreadPool())
-        );
+        ServerBootstrap bootstrap = new ServerBootstrap(newChannelFactory("http"));
         try {
             if (httpPort != -1) {
                 bootstrap.setPipelineFactory(new HttpServerPipelineFactory());
@@ -96,9 +95,7 @@ public class Server {
             Play.fatalServerErrorOccurred();
         }
 
-        bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(
-                Executors.newCachedThreadPool(), Executors.newCachedThreadPool())
-        );
+        bootstrap = new ServerBootstrap(newChannelFactory("https"));
 
         try {
             if (httpsPort != -1) {
@@ -132,6 +129,18 @@ public class Server {
 	}
     }
 
+    /**
+     * Create the channels factory of a server. Each bound port has its own boss thread, accepting the connections, which
+     * are then handled by <code>play.netty.workers</code> I/O threads (twice the number of processors by default).
+     */
+    static NioServerSocketChannelFactory newChannelFactory(String name) {
+        int workers = Integer.parseInt(Play.configuration.getProperty("play.netty.workers", String.valueOf(Runtime.getRuntime().availableProcessors() * 2)));
+        return new NioServerSocketChannelFactory(
+                Executors.newCachedThreadPool(new PThreadFactory(name + "-boss")),
+                Executors.newCachedThreadPool(new PThreadFactory(name + "-worker")),
+                workers);
+    }
+
     private String getOpt(String[] args, String arg, String defaultValue) {
         String s = "--" + arg + "=";
         for (String a : args) {
@@ -445,6 +445,7 @@ public class ServletWrapper extends HttpServlet implements ServletContextListene
     }
 
     public void copyResponse(Request request, Response response, HttpServletRequest servletRequest, HttpServletResponse servletResponse) throws IOException {
+        PlayHandler.addContentEtag(request, response);
         String encoding = Response.current().encoding;
         if (response.contentType != null) {
             servletResponse.setHeader("Content-Type", response.contentType + (response.contentType.startsWith("text/") ? "; charset="+encoding : ""));
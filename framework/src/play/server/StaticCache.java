@@ -0,0 +1,219 @@
+package play.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+
+import play.Logger;
+import play.Play;
+import play.libs.Codec;
+import play.libs.IO;
+import play.libs.MimeTypes;
+import play.utils.Utils;
+import play.vfs.VirtualFile;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.*;
+
+/**
+ * The small static files, kept in memory with their response headers, so that they can be served without any file
+ * system access.
+ * <p/>
+ * The cache is bounded by <code>play.netty.staticCache.maxSize</code> bytes, the least recently served files being
+ * evicted first, and only holds files up to <code>play.netty.staticCache.maxFileSize</code> bytes. With the responses
+ * compression enabled, the compressible files are also kept gzipped. In DEV mode, the cached files are checked for
+ * changes on each request.
+ */
+class StaticCache {
+
+    final long maxSize;
+    final long maxFileSize;
+    /**
+     * The compression settings, if enabled
+     */
+    final CompressionHandler compression;
+    long size;
+    final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+    /**
+     * A representation of a file: as is, or gzipped
+     */
+    static class Variant {
+
+        final ChannelBuffer content;
+        final String etag;
+        /**
+         * The response headers, as name, value pairs
+         */
+        final String[] headers;
+
+        Variant(byte[] content, String contentType, String contentEncoding, long lastModified) throws Exception {
+            this.content = ChannelBuffers.unmodifiableBuffer(ChannelBuffers.wrappedBuffer(content));
+            this.etag = "\"" + Codec.byteToHexString(MessageDigest.getInstance("MD5").digest(content)) + "\"";
+            String lastModifiedDate = Utils.getHttpDateFormatter().format(new Date(lastModified));
+            if (contentEncoding == null) {
+                headers = new String[]{CONTENT_TYPE, contentType, LAST_MODIFIED, lastModifiedDate};
+            } else {
+                headers = new String[]{CONTENT_TYPE, contentType, LAST_MODIFIED, lastModifiedDate,
+                    CONTENT_ENCODING, contentEncoding, VARY, ACCEPT_ENCODING};
+            }
+        }
+
+        void addHeaders(HttpResponse response) {
+            for (int i = 0; i < headers.length; i += 2) {
+                response.setHeader(headers[i], headers[i + 1]);
+            }
+        }
+    }
+
+    static class Entry {
+
+        final VirtualFile file;
+        /**
+         * The actual file path, if the file was requested through its directory
+         */
+        final String indexPath;
+        final File realFile;
+        final long lastModified;
+        final long length;
+        final File gzippedFile;
+        final long gzippedLastModified;
+        final Variant identity;
+        final Variant gzipped;
+
+        Entry(VirtualFile file, String indexPath, File realFile, File gzippedFile, CompressionHandler compression) throws Exception {
+            this.file = file;
+            this.indexPath = indexPath;
+            this.realFile = realFile;
+            this.lastModified = realFile.lastModified();
+            byte[] content = IO.readContent(realFile);
+            this.length = content.length;
+            String contentType = MimeTypes.getContentType(realFile.getName(), "text/plain");
+            this.identity = new Variant(content, contentType, null, lastModified);
+            this.gzippedFile = gzippedFile;
+            if (gzippedFile != null) {
+                this.gzippedLastModified = gzippedFile.lastModified();
+                this.gzipped = new Variant(IO.readContent(gzippedFile), contentType, HttpHeaders.Values.GZIP, lastModified);
+            } else {
+                this.gzippedLastModified = 0;
+                byte[] compressed = compression != null && compression.isCompressible(contentType) ? gzip(content) : null;
+                // Not worth it for the small files
+                if (compressed != null && compressed.length < content.length) {
+                    this.gzipped = new Variant(compressed, contentType, HttpHeaders.Values.GZIP, lastModified);
+                } else {
+                    this.gzipped = null;
+                }
+            }
+        }
+
+        static byte[] gzip(byte[] content) throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2);
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(content);
+            out.close();
+            return compressed.toByteArray();
+        }
+
+        long size() {
+            return identity.content.capacity() + (gzipped == null ? 0 : gzipped.content.capacity());
+        }
+
+        boolean isStale() {
+            return realFile.lastModified() != lastModified || realFile.length() != length
+                    || (gzippedFile != null && gzippedFile.lastModified() != gzippedLastModified)
+                    || (gzippedFile == null && PlayHandler.precompressed(realFile) != null);
+        }
+    }
+
+    StaticCache(long maxSize, long maxFileSize) {
+        this.maxSize = maxSize;
+        this.maxFileSize = maxFileSize;
+        this.compression = CompressionHandler.isEnabled() ? new CompressionHandler() : null;
+    }
+
+    /**
+     * Create the cache as configured
+     *
+     * @return null if it is disabled
+     */
+    static StaticCache create() {
+        long maxSize = Long.parseLong(Play.configuration.getProperty("play.netty.staticCache.maxSize", "10485760"));
+        long maxFileSize = Long.parseLong(Play.configuration.getProperty("play.netty.staticCache.maxFileSize", "65536"));
+        if (maxSize <= 0 || maxFileSize <= 0) {
+            return null;
+        }
+        return new StaticCache(maxSize, maxFileSize);
+    }
+
+    /**
+     * Get a cached file
+     *
+     * @param path The requested path, ie. /public/stylesheets/main.css
+     */
+    Entry get(String path) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(path);
+        }
+        if (entry != null && Play.mode.isDev() && entry.isStale()) {
+            remove(path, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Read a file into the cache, if it is small enough
+     *
+     * @param path      The requested path
+     * @param file      The resolved file
+     * @param indexPath The actual file path, if the file was requested through its directory
+     * @return null if the file cannot be cached
+     */
+    Entry load(String path, VirtualFile file, String indexPath) {
+        File realFile = file.getRealFile();
+        if (realFile == null || !realFile.isFile() || realFile.length() > maxFileSize) {
+            return null;
+        }
+        Entry entry;
+        try {
+            entry = new Entry(file, indexPath, realFile, PlayHandler.precompressed(realFile), compression);
+        } catch (Exception e) {
+            Logger.warn(e, "Cannot cache the static file %s", realFile);
+            return null;
+        }
+        long entrySize = entry.size();
+        synchronized (this) {
+            Entry previous = entries.put(path, entry);
+            if (previous != null) {
+                size -= previous.size();
+            }
+            size += entrySize;
+            // Evict the least recently served files
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (size > maxSize && eldest.hasNext()) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                size -= evicted.size();
+            }
+        }
+        return entry;
+    }
+
+    synchronized void remove(String path, Entry entry) {
+        if (entries.get(path) == entry) {
+            entries.remove(path);
+            size -= entry.size();
+        }
+    }
+}
@@ -2,13 +2,17 @@ package play.server;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-import org.apache.commons.io.IOUtils;
-import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
@@ -16,23 +20,58 @@ import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpChunk;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpMessage;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
 
 import play.Play;
+import play.mvc.ActionRegistry;
+import play.mvc.Router;
+import play.mvc.StreamedBody;
+import play.mvc.results.NotFound;
+import play.mvc.results.RenderStatic;
 
+/**
+ * Aggregate the chunks of a request body. Small bodies are kept in memory, up to <code>play.netty.memoryThreshold</code>
+ * bytes, larger ones are written to a temporary file.
+ * <p/>
+ * The requests for {@link StreamedBody} actions are not aggregated: they are passed on at once, their body being
+ * streamed to the action.
+ */
 public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
 
+    static final String EXCEEDED = "play.netty.content.length.exceeded";
+
     private volatile HttpMessage currentMessage;
     private volatile OutputStream out;
     private final int maxContentLength;
+    private final int memoryThreshold;
     private volatile File file;
+    /**
+     * The chunks received so far, while the body is kept in memory
+     */
+    private final List<ChannelBuffer> chunks = new ArrayList<ChannelBuffer>();
+    private volatile long length;
+    /**
+     * Whether the current message body is over the maximum length, and discarded
+     */
+    private volatile boolean exceeded;
+    /**
+     * The body of the current message, if streamed
+     */
+    private volatile BodyStream stream;
 
     /**
      * Creates a new instance.
      */
     public StreamChunkAggregator(int maxContentLength) {
+        this(maxContentLength, Integer.parseInt(Play.configuration.getProperty("play.netty.memoryThreshold", "65536")));
+    }
+
+    public StreamChunkAggregator(int maxContentLength, int memoryThreshold) {
         this.maxContentLength = maxContentLength;
+        this.memoryThreshold = memoryThreshold;
     }
 
     @Override
@@ -44,11 +83,9 @@ public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
         }
 
         HttpMessage currentMessage = this.currentMessage;
-        File localFile = this.file;
         if (currentMessage == null) {
             HttpMessage m = (HttpMessage) msg;
             if (m.isChunked()) {
-                final String localName = UUID.randomUUID().toString();
                 // A chunked message - remove 'Transfer-Encoding' header,
                 // initialize the cumulative buffer, and wait for incoming chunks.
                 List<String> encodings = m.getHeaders(HttpHeaders.Names.TRANSFER_ENCODING);
@@ -57,43 +94,178 @@ public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
                     m.removeHeader(HttpHeaders.Names.TRANSFER_ENCODING);
                 }
                 this.currentMessage = m;
-                this.file = new File(Play.tmpDir, localName);
-                this.out = new FileOutputStream(file, true);
+                this.length = 0;
+                this.exceeded = maxContentLength != -1 && HttpHeaders.getContentLength(m, 0) > maxContentLength;
                 String expect = m.getHeader(HttpHeaders.Names.EXPECT);
-                if(expect != null && expect.equals("100-continue")){
+                if (expect != null && expect.equals("100-continue")) {
+                    if (exceeded) {
+                        // The client waits for our answer before sending the body: refuse it
+                        this.currentMessage = null;
+                        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+                        response.setHeader(HttpHeaders.Names.CONTENT_LENGTH, "0");
+                        response.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+                        ctx.getChannel().write(response).addListener(ChannelFutureListener.CLOSE);
+                        return;
+                    }
                     DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE);
                     ctx.getChannel().write(response);
                 }
+                if (exceeded) {
+                    // Known to be too large: the body is discarded as it comes
+                    m.setHeader(HttpHeaders.Names.WARNING, EXCEEDED);
+                } else if (isStreamed(m)) {
+                    this.stream = new BodyStream(ctx.getChannel(), memoryThreshold);
+                    m.setChunked(false);
+                    m.setContent(new StreamedChannelBuffer(stream));
+                    Channels.fireMessageReceived(ctx, m, e.getRemoteAddress());
+                }
             } else {
                 // Not a chunked message - pass through.
                 ctx.sendUpstream(e);
             }
         } else {
-            // TODO: If less that threshold then in memory
             // Merge the received chunk into the content of the current message.
             final HttpChunk chunk = (HttpChunk) msg;
-            if (maxContentLength != -1 && (localFile.length() > (maxContentLength - chunk.getContent().readableBytes()))) {
-                currentMessage.setHeader(HttpHeaders.Names.WARNING, "play.netty.content.length.exceeded");
-            } else {
-                IOUtils.copyLarge(new ChannelBufferInputStream(chunk.getContent()), this.out);
+            ChannelBuffer content = chunk.getContent();
+            if (stream != null) {
+                receive(chunk);
+                return;
+            }
+            if (exceeded) {
+                // Discard it
+            } else if (maxContentLength != -1 && (length > (maxContentLength - content.readableBytes()))) {
+                currentMessage.setHeader(HttpHeaders.Names.WARNING, EXCEEDED);
+                exceeded = true;
+                discard();
+            } else if (content.readable()) {
+                length += content.readableBytes();
+                if (out == null && length <= memoryThreshold) {
+                    chunks.add(content);
+                } else {
+                    if (out == null) {
+                        spill();
+                    }
+                    content.readBytes(out, content.readableBytes());
+                }
+            }
 
-                if (chunk.isLast()) {
+            if (chunk.isLast()) {
+                currentMessage.setChunked(false);
+                if (exceeded) {
+                    currentMessage.setContent(ChannelBuffers.EMPTY_BUFFER);
+                } else if (out != null) {
                     this.out.flush();
                     this.out.close();
-
-                    currentMessage.setHeader(
-                            HttpHeaders.Names.CONTENT_LENGTH,
-                            String.valueOf(localFile.length()));
-
-                    currentMessage.setContent(new FileChannelBuffer(localFile));
                     this.out = null;
-                    this.currentMessage = null;
-                    this.file = null;
-                    Channels.fireMessageReceived(ctx, currentMessage, e.getRemoteAddress());
+                    currentMessage.setHeader(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(file.length()));
+                    currentMessage.setContent(new FileChannelBuffer(file));
+                } else {
+                    currentMessage.setHeader(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(length));
+                    // No copy, the chunks are composed
+                    currentMessage.setContent(ChannelBuffers.wrappedBuffer(chunks.toArray(new ChannelBuffer[chunks.size()])));
                 }
+                chunks.clear();
+                this.currentMessage = null;
+                this.file = null;
+                Channels.fireMessageReceived(ctx, currentMessage, e.getRemoteAddress());
             }
         }
 
     }
-}
 
+    /**
+     * Pass a chunk to the action reading the streamed body
+     */
+    private void receive(HttpChunk chunk) {
+        ChannelBuffer content = chunk.getContent();
+        if (!exceeded) {
+            length += content.readableBytes();
+            if (maxContentLength != -1 && length > maxContentLength) {
+                exceeded = true;
+                stream.fail(new IOException("The request body is larger than play.netty.maxContentLength"));
+            } else {
+                stream.offer(content);
+            }
+        }
+        if (chunk.isLast()) {
+            stream.end();
+            this.stream = null;
+            this.currentMessage = null;
+        }
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        BodyStream stream = this.stream;
+        if (stream != null) {
+            stream.fail(new IOException("The connection was closed before the end of the request body"));
+        }
+        super.channelClosed(ctx, e);
+    }
+
+    /**
+     * Check if a request is for a {@link StreamedBody} action.
+     * <p/>
+     * It runs in the I/O thread, before the request body is received: it only reads the routes and the actions
+     * registered at startup, in PROD mode. In DEV mode, the bodies of the {@link StreamedBody} actions are received
+     * before they are invoked.
+     */
+    static boolean isStreamed(HttpMessage message) {
+        if (!(message instanceof HttpRequest) || !Play.started || Play.mode != Play.Mode.PROD || !ActionRegistry.hasStreamedBodies()) {
+            return false;
+        }
+        HttpRequest request = (HttpRequest) message;
+        String path = request.getUri();
+        String querystring = null;
+        // Remove domain and port, and the query string
+        if (path.startsWith("http://") || path.startsWith("https://")) {
+            path = path.substring(path.indexOf("/", 9));
+        }
+        if (path.indexOf('?') >= 0) {
+            querystring = path.substring(path.indexOf('?') + 1);
+            path = path.substring(0, path.indexOf('?'));
+        }
+        String domain = request.getHeader(HttpHeaders.Names.HOST);
+        if (domain != null && domain.indexOf(':') >= 0) {
+            domain = domain.substring(0, domain.indexOf(':'));
+        }
+        String method = request.getHeader("X-HTTP-Method-Override");
+        if (method == null) {
+            method = request.getMethod().getName();
+        }
+        String action;
+        try {
+            action = Router.routeAction(method, path, querystring, domain);
+        } catch (NotFound e) {
+            return false;
+        } catch (RenderStatic e) {
+            return false;
+        }
+        if (action == null) {
+            return false;
+        }
+        ActionRegistry.Entry entry = ActionRegistry.find(action);
+        return entry != null && entry.method.method.isAnnotationPresent(StreamedBody.class);
+    }
+
+    /**
+     * Move the body received so far to a temporary file, as it gets too large to be kept in memory
+     */
+    private void spill() throws Exception {
+        this.file = new File(Play.tmpDir, UUID.randomUUID().toString());
+        this.out = new FileOutputStream(file, true);
+        for (ChannelBuffer chunk : chunks) {
+            chunk.readBytes(out, chunk.readableBytes());
+        }
+        chunks.clear();
+    }
+
+    private void discard() throws Exception {
+        chunks.clear();
+        if (out != null) {
+            out.close();
+            out = null;
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package play.server;
+
+import org.jboss.netty.buffer.BigEndianHeapChannelBuffer;
+
+/**
+ * The content of a request whose body is streamed to its action: empty, the body being read from its stream while it
+ * is received.
+ */
+class StreamedChannelBuffer extends BigEndianHeapChannelBuffer {
+
+    final BodyStream stream;
+
+    StreamedChannelBuffer(BodyStream stream) {
+        super(0);
+        this.stream = stream;
+    }
+}
@@ -10,7 +10,9 @@ import org.jboss.netty.handler.ssl.SslHandler;
 import org.jboss.netty.handler.stream.ChunkedWriteHandler;
 
 import play.Play;
+import play.server.CompressionHandler;
 import play.server.FlashPolicyHandler;
+import play.server.PipeliningHandler;
 import play.server.StreamChunkAggregator;
 
 import static org.jboss.netty.channel.Channels.pipeline;
@@ -42,7 +44,11 @@ public class SslHttpServerPipelineFactory implements ChannelPipelineFactory {
         pipeline.addLast("decoder", new HttpRequestDecoder());
         pipeline.addLast("aggregator", new StreamChunkAggregator(max));
         pipeline.addLast("encoder", new HttpResponseEncoder());
+        if (CompressionHandler.isEnabled()) {
+            pipeline.addLast("compressor", new CompressionHandler());
+        }
         pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
+        pipeline.addLast("pipelining", new PipeliningHandler());
 
         pipeline.addLast("handler", new SslPlayHandler());
 
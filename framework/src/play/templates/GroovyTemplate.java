@@ -32,7 +32,6 @@ import play.Logger;
 import play.Play;
 import play.Play.Mode;
 import play.classloading.BytecodeCache;
-import play.classloading.enhancers.LocalvariablesNamesEnhancer.LocalVariablesNamesTracer;
 import play.data.binding.Unbinder;
 import play.exceptions.ActionNotFoundException;
 import play.exceptions.NoRouteFoundException;
@@ -48,7 +47,7 @@ import play.i18n.Messages;
 import play.libs.Codec;
 import play.mvc.Http;
 import play.utils.Java;
-import play.mvc.ActionInvoker;
+import play.mvc.ActionRegistry;
 import play.mvc.Http.Request;
 import play.mvc.Router;
 import play.templates.types.SafeCSVFormatter;
@@ -514,8 +513,9 @@ public class GroovyTemplate extends BaseTemplate {
                     }
                     try {
                         Map<String, Object> r = new HashMap<String, Object>();
-                        Method actionMethod = (Method) ActionInvoker.getActionMethod(action)[1];
-                        String[] names = (String[]) actionMethod.getDeclaringClass().getDeclaredField("$" + actionMethod.getName() + LocalVariablesNamesTracer.computeMethodHash(actionMethod.getParameterTypes())).get(null);
+                        ActionRegistry.ControllerMethod controllerMethod = ActionRegistry.get(action).method;
+                        Method actionMethod = controllerMethod.method;
+                        String[] names = controllerMethod.parameterNames();
                         if (param instanceof Object[]) {
                             if(((Object[])param).length == 1 && ((Object[])param)[0] instanceof Map) {
                                 r = (Map<String,Object>)((Object[])param)[0];
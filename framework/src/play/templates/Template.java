@@ -3,6 +3,8 @@ package play.templates;
 import java.util.HashMap;
 import java.util.Map;
 
+import play.libs.Metrics;
+
 public abstract class Template {
 
     public String name;
@@ -23,7 +25,12 @@ public abstract class Template {
         //
         // Since the original args is not poluted it can be used as input
         // to another rendering operation later
-        return internalRender( new HashMap<String, Object>(args) );
+        long start = System.nanoTime();
+        try {
+            return internalRender( new HashMap<String, Object>(args) );
+        } finally {
+            Metrics.record(Metrics.Phase.RENDER, start);
+        }
     }
 
 
@@ -35,7 +42,12 @@ public abstract class Template {
     protected abstract String internalRender(Map<String, Object> args);
     
     public String render() {
-        return internalRender(new HashMap<String, Object>());
+        long start = System.nanoTime();
+        try {
+            return internalRender(new HashMap<String, Object>());
+        } finally {
+            Metrics.record(Metrics.Phase.RENDER, start);
+        }
     }
 
     public String getName() {
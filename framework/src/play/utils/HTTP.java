@@ -1,10 +1,16 @@
 package play.utils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
 import org.apache.commons.lang.StringUtils;
 import play.libs.IO;
 
@@ -83,4 +89,51 @@ public class HTTP {
         // Didn't find it - return it as it is
         return headerName;
     }
+
+    /**
+     * Compute a strong ETag from a rendered content
+     */
+    public static String etag(ByteArrayOutputStream content) {
+        CRC32 crc = new CRC32();
+        try {
+            content.writeTo(new CheckedOutputStream(new OutputStream() {
+
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }, crc));
+        } catch (IOException e) {
+            // Not thrown by the in-memory streams
+        }
+        return "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.size()) + "\"";
+    }
+
+    /**
+     * Check an If-None-Match header value against an ETag, using the weak comparison
+     *
+     * @param ifNoneMatch The header value, ie. "abc", W/"def" or *
+     */
+    public static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,104 @@
+package play.utils;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map loaded on its first access, ie. to parse the request headers only when an action reads them.
+ * <p/>
+ * It is serialized as a plain <code>HashMap</code>, once loaded.
+ */
+public abstract class LazyMap<K, V> implements Map<K, V>, Serializable {
+
+    private Map<K, V> map;
+
+    /**
+     * Build the map content
+     */
+    protected abstract Map<K, V> load();
+
+    /**
+     * Get the map content, loading it if needed
+     */
+    protected Map<K, V> map() {
+        if (map == null) {
+            map = load();
+        }
+        return map;
+    }
+
+    public boolean isLoaded() {
+        return map != null;
+    }
+
+    public int size() {
+        return map().size();
+    }
+
+    public boolean isEmpty() {
+        return map().isEmpty();
+    }
+
+    public boolean containsKey(Object key) {
+        return map().containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        return map().containsValue(value);
+    }
+
+    public V get(Object key) {
+        return map().get(key);
+    }
+
+    public V put(K key, V value) {
+        return map().put(key, value);
+    }
+
+    public V remove(Object key) {
+        return map().remove(key);
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        map().putAll(m);
+    }
+
+    public void clear() {
+        map().clear();
+    }
+
+    public Set<K> keySet() {
+        return map().keySet();
+    }
+
+    public Collection<V> values() {
+        return map().values();
+    }
+
+    public Set<Entry<K, V>> entrySet() {
+        return map().entrySet();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || map().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return map().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return map().toString();
+    }
+
+    protected Object writeReplace() throws ObjectStreamException {
+        return new HashMap<K, V>(map());
+    }
+}
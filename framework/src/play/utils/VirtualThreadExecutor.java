@@ -0,0 +1,245 @@
+package play.utils;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import play.Logger;
+import play.Play;
+
+/**
+ * A scheduled executor that runs each task in a new virtual thread, on the JDKs that have them (21 and later).
+ * <p/>
+ * A task that blocks on I/O, ie. a JDBC query or a web service call, then releases its carrier thread instead of
+ * holding one of the few threads of a pool. The platform thread of the executor only waits for the delay of the
+ * scheduled tasks. At most <code>maxConcurrency</code> tasks run at the same time, so that they do not take more
+ * connections than the database pool has: the others wait for their turn in their virtual thread.
+ * <p/>
+ * The framework thread locals (<code>Http.Request.current</code>, <code>Scope.*.current</code>,
+ * <code>JPA.local</code>, <code>Lang.current</code>...) are not inheritable: each task starts without them and they
+ * are dropped with its thread.
+ */
+public class VirtualThreadExecutor extends ScheduledThreadPoolExecutor {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+        } catch (Exception e) {
+            // Before JDK 21
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    final ThreadFactory virtualThreads;
+    final Semaphore permits;
+    final AtomicInteger running = new AtomicInteger();
+    /**
+     * The virtual threads of the tasks running, or waiting for their turn
+     */
+    final ConcurrentMap<Thread, Boolean> threads = new ConcurrentHashMap<Thread, Boolean>();
+
+    /**
+     * @param name The prefix of the threads names
+     * @param maxConcurrency The maximum number of tasks running at the same time, 0 for no limit
+     */
+    public VirtualThreadExecutor(String name, int maxConcurrency) {
+        super(1, new PThreadFactory(name + "-scheduler"), new ThreadPoolExecutor.AbortPolicy());
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+        }
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name + "-virtual-", 1L);
+            this.virtualThreads = (ThreadFactory) FACTORY.invoke(builder);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Cannot create virtual threads", e);
+        }
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+    }
+
+    /**
+     * @return true if the JDK has virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null && NAME != null && FACTORY != null;
+    }
+
+    /**
+     * Create the executor of a pool, configured by its size property and <code>{property}.threads</code>:
+     * <code>platform</code> for a pool of platform threads, <code>virtual</code> for a virtual thread by task, the size
+     * being then the maximum number of tasks running at the same time.
+     *
+     * @param name The prefix of the threads names
+     * @param property The property of the pool size, ie. <code>play.pool</code>
+     * @param defaultSize The pool size when the property is not set
+     */
+    public static ScheduledThreadPoolExecutor create(String name, String property, String defaultSize) {
+        int size = Integer.parseInt(Play.configuration.getProperty(property, defaultSize));
+        if ("virtual".equals(Play.configuration.getProperty(property + ".threads", "platform"))) {
+            if (isSupported()) {
+                return new VirtualThreadExecutor(name, size);
+            }
+            Logger.warn("%s.threads is virtual, but Java %s has no virtual threads: using a pool of %s platform threads", property, System.getProperty("java.version"), size);
+        }
+        return new ScheduledThreadPoolExecutor(size, new PThreadFactory(name), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Get the task scheduled by an element of the queue of an executor
+     */
+    public static Object unwrap(Object element) {
+        if (element instanceof VirtualTask) {
+            return ((VirtualTask<?>) element).task;
+        }
+        return element;
+    }
+
+    /**
+     * @return The number of tasks running, or waiting for their turn
+     */
+    @Override
+    public int getActiveCount() {
+        return running.get();
+    }
+
+    /**
+     * Stop the scheduler and interrupt the tasks running in their virtual threads
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> waiting = super.shutdownNow();
+        for (Thread thread : threads.keySet()) {
+            thread.interrupt();
+        }
+        return waiting;
+    }
+
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(Runnable runnable, RunnableScheduledFuture<V> task) {
+        return new VirtualTask<V>(task);
+    }
+
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(Callable<V> callable, RunnableScheduledFuture<V> task) {
+        return new VirtualTask<V>(task);
+    }
+
+    /**
+     * A scheduled task that starts a virtual thread when it is due. A periodic task is scheduled again by its run in
+     * the virtual thread, so that the next run never overlaps the current one.
+     */
+    class VirtualTask<V> implements RunnableScheduledFuture<V> {
+
+        final RunnableScheduledFuture<V> task;
+
+        VirtualTask(RunnableScheduledFuture<V> task) {
+            this.task = task;
+        }
+
+        public void run() {
+            running.incrementAndGet();
+            Thread thread = null;
+            try {
+                thread = virtualThreads.newThread(new Runnable() {
+
+                    public void run() {
+                        try {
+                            if (permits != null) {
+                                permits.acquireUninterruptibly();
+                            }
+                            try {
+                                task.run();
+                            } finally {
+                                if (permits != null) {
+                                    permits.release();
+                                }
+                            }
+                        } finally {
+                            threads.remove(Thread.currentThread());
+                            running.decrementAndGet();
+                        }
+                    }
+                });
+                // Tracked before it starts, so that it is out of the set once it ends
+                threads.put(thread, Boolean.TRUE);
+                thread.start();
+            } catch (RuntimeException e) {
+                notStarted(thread);
+                throw e;
+            } catch (Error e) {
+                notStarted(thread);
+                throw e;
+            }
+        }
+
+        void notStarted(Thread thread) {
+            if (thread != null) {
+                threads.remove(thread);
+            }
+            running.decrementAndGet();
+        }
+
+        public boolean isPeriodic() {
+            return task.isPeriodic();
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return task.getDelay(unit);
+        }
+
+        public int compareTo(Delayed other) {
+            if (other instanceof VirtualTask) {
+                return task.compareTo(((VirtualTask<?>) other).task);
+            }
+            return task.compareTo(other);
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return task.cancel(mayInterruptIfRunning);
+        }
+
+        public boolean isCancelled() {
+            return task.isCancelled();
+        }
+
+        public boolean isDone() {
+            return task.isDone();
+        }
+
+        public V get() throws InterruptedException, ExecutionException {
+            return task.get();
+        }
+
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return task.get(timeout, unit);
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+}
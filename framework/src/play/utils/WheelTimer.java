@@ -0,0 +1,128 @@
+package play.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+
+import play.Play;
+
+/**
+ * The timer of the delayed tasks: timeouts, suspended requests and delayed jobs.
+ * <p/>
+ * The tasks are kept in a hashed wheel, that is turned by a single thread every <code>play.timer.tick</code>
+ * milliseconds (10 by default): scheduling and cancelling a task take a constant time, however many tasks are
+ * pending, and a cancelled task is removed at once. A task runs at most a tick after its delay.
+ */
+public class WheelTimer {
+
+    static final HashedWheelTimer timer = new HashedWheelTimer(new ThreadFactory() {
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "WheelTimer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }, Long.parseLong(Play.configuration == null ? "10" : Play.configuration.getProperty("play.timer.tick", "10")), TimeUnit.MILLISECONDS);
+
+    static final AtomicInteger pending = new AtomicInteger();
+    static final AtomicLong scheduled = new AtomicLong();
+    static final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * Run a task after a delay
+     *
+     * @param executor The executor of the task, or null to run it in the timer thread when it is short
+     * @return The future of the task: cancelling it before its delay removes it from the timer
+     */
+    public static <V> Future<V> schedule(Callable<V> task, long delay, TimeUnit unit, Executor executor) {
+        Task<V> future = new Task<V>(task, executor);
+        pending.incrementAndGet();
+        scheduled.incrementAndGet();
+        future.timeout = timer.newTimeout(future, delay, unit);
+        return future;
+    }
+
+    /**
+     * Run a task after a delay
+     *
+     * @param executor The executor of the task, or null to run it in the timer thread when it is short
+     * @return The future of the task: cancelling it before its delay removes it from the timer
+     */
+    public static Future<?> schedule(Runnable task, long delay, TimeUnit unit, Executor executor) {
+        return schedule(Executors.callable(task), delay, unit, executor);
+    }
+
+    /**
+     * @return The number of tasks waiting for their delay
+     */
+    public static int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * @return The number of tasks scheduled since the start
+     */
+    public static long getScheduled() {
+        return scheduled.get();
+    }
+
+    /**
+     * @return The number of tasks cancelled before their delay since the start
+     */
+    public static long getCancelled() {
+        return cancelled.get();
+    }
+
+    static class Task<V> extends FutureTask<V> implements TimerTask {
+
+        final Executor executor;
+        final AtomicBoolean waiting = new AtomicBoolean(true);
+        volatile Timeout timeout;
+
+        Task(Callable<V> callable, Executor executor) {
+            super(callable);
+            this.executor = executor;
+        }
+
+        public void run(Timeout timeout) {
+            if (!waiting.compareAndSet(true, false)) {
+                return;
+            }
+            pending.decrementAndGet();
+            if (executor == null) {
+                run();
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                setException(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean done = super.cancel(mayInterruptIfRunning);
+            if (done && waiting.compareAndSet(true, false)) {
+                pending.decrementAndGet();
+                cancelled.incrementAndGet();
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+            }
+            return done;
+        }
+    }
+}
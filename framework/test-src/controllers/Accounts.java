@@ -0,0 +1,29 @@
+package controllers;
+
+import play.mvc.Before;
+import play.mvc.Controller;
+import play.mvc.StreamedBody;
+
+/**
+ * A controller for the tests of the actions registry. The parameter names fields are those the enhancer adds.
+ */
+public class Accounts extends Controller {
+
+    public static String[] $index0 = {};
+    public static String[] $show1532643275 = {"id", "name"};
+    public static String[] $upload0 = {};
+
+    @Before
+    public static void check() {
+    }
+
+    public static void index() {
+    }
+
+    public static void show(Long id, String name) {
+    }
+
+    @StreamedBody
+    public static void upload() {
+    }
+}
@@ -0,0 +1,53 @@
+package play;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.libs.Metrics;
+import play.mvc.Http;
+import play.mvc.Router;
+
+import static org.junit.Assert.*;
+
+public class CorePluginTest {
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        Http.Request.current.set(Http.Request.createRequest(null, "GET", "/reports", "", null, null, null, null, false, 80, "localhost", false, null, null));
+    }
+
+    @After
+    public void tearDown() {
+        Http.Request.current.remove();
+        Metrics.reset();
+    }
+
+    static Router.Route route() {
+        Router.Route route = new Router.Route();
+        route.method = "GET";
+        route.path = "/reports";
+        route.action = "Reports.index";
+        return route;
+    }
+
+    @Test
+    public void completesTheRouteSampleOfARequestAnsweredWithoutInvocation() {
+        Router.Route route = route();
+        new CorePlugin().onRequestRouting(route);
+        Metrics.RouteStats stats = Metrics.route(route);
+        assertEquals(1, stats.getInFlight());
+
+        // ie. rejected by a full pool
+        CorePlugin.completeRouteSample(503);
+        assertEquals(0, stats.getInFlight());
+        assertEquals(1, stats.getCount(5));
+        assertFalse(Http.Request.current().args.containsKey(CorePlugin.ROUTE_METRICS));
+
+        // Completed only once
+        CorePlugin.completeRouteSample(500);
+        assertEquals(1, stats.getCount(5));
+        assertEquals(0, stats.getInFlight());
+    }
+}
@@ -0,0 +1,237 @@
+package play;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.exceptions.ConfigurationException;
+import play.exceptions.DeadlineExceededException;
+import play.exceptions.UnexpectedException;
+import play.libs.F.Promise;
+import play.utils.SmartFuture;
+
+import static org.junit.Assert.*;
+
+public class InvokerTest {
+
+    ScheduledThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() {
+        Properties configuration = new Properties();
+        configuration.setProperty("play.pool.reports.size", "1");
+        configuration.setProperty("play.pool.reports.queue", "1");
+        configuration.setProperty("play.pool.bad.rejection", "retry");
+        new PlayBuilder().withConfiguration(configuration).build();
+        executor = Invoker.executor;
+        Invoker.executor = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @After
+    public void tearDown() {
+        Invoker.executor.shutdownNow();
+        Invoker.executor = executor;
+        for (Invoker.Bulkhead pool : Invoker.pools.values()) {
+            pool.executor.shutdownNow();
+        }
+        Invoker.pools.clear();
+    }
+
+    static class Blocking extends Invoker.DirectInvocation {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        Invoker.Bulkhead pool;
+        Future<?> nested;
+
+        @Override
+        public void execute() {
+        }
+
+        @Override
+        public void run() {
+            pool = Invoker.Bulkhead.current();
+            nested = Invoker.invoke(new Resumed(), "reports");
+            started.countDown();
+            try {
+                unblock.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    public void runsTheInvocationsInTheirPool() throws Exception {
+        Blocking blocking = new Blocking();
+        assertNotNull(Invoker.invoke(blocking, "reports"));
+        assertTrue(blocking.started.await(5, TimeUnit.SECONDS));
+        Invoker.Bulkhead reports = Invoker.pool("reports");
+        assertSame(reports, blocking.pool);
+        assertNull(blocking.nested);
+        assertNull(Invoker.Bulkhead.current());
+
+        // One thread busy, one invocation queued, the next one is rejected
+        Resumed queued = new Resumed();
+        Invoker.invoke(queued, "reports");
+        try {
+            Invoker.invoke(new Resumed(), "reports");
+            fail("The full pool should reject the invocation");
+        } catch (RejectedExecutionException e) {
+            assertEquals(1, reports.rejected.get());
+        }
+        assertEquals(1, reports.executor.getQueue().size());
+        blocking.unblock.countDown();
+        assertTrue(queued.await());
+        assertFalse(reports.callerRuns);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void checksTheRejectionPolicy() {
+        Invoker.pool("bad");
+    }
+
+    @Test
+    public void givesTheTimeLeftBeforeTheDeadline() {
+        assertEquals(1000, Invoker.InvocationContext.timeLeft(1000));
+        Invoker.InvocationContext context = new Invoker.InvocationContext("test");
+        Invoker.InvocationContext.current.set(context);
+        try {
+            assertEquals(1000, Invoker.InvocationContext.timeLeft(1000));
+            context.setDeadline(System.nanoTime() + TimeUnit.SECONDS.toNanos(10));
+            assertEquals(1000, Invoker.InvocationContext.timeLeft(1000));
+            long left = Invoker.InvocationContext.timeLeft(Long.MAX_VALUE);
+            assertTrue(left > 9000 && left <= 10000);
+            context.setDeadline(System.nanoTime() - 1);
+            try {
+                Invoker.InvocationContext.timeLeft(1000);
+                fail("The deadline is passed");
+            } catch (DeadlineExceededException e) {
+                assertTrue(DeadlineExceededException.isCause(new UnexpectedException(e)));
+            }
+        } finally {
+            Invoker.InvocationContext.current.remove();
+        }
+    }
+
+    static class Resumed extends Invoker.DirectInvocation {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void execute() {
+        }
+
+        @Override
+        public void run() {
+            latch.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return latch.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void resumesOnPromiseRedemption() throws Exception {
+        Promise<String> promise = new Promise<String>();
+        Resumed invocation = new Resumed();
+        Invoker.WaitForTasksCompletion.waitFor(promise, invocation);
+        assertEquals(1, invocation.latch.getCount());
+        promise.invoke("done");
+        assertTrue(invocation.await());
+    }
+
+    @Test
+    public void resumesOnSmartFutureCompletion() throws Exception {
+        SmartFuture<String> future = new SmartFuture<String>();
+        future.wrap(new FutureTask<String>(new Runnable() {
+
+            public void run() {
+            }
+        }, "done"));
+        Resumed invocation = new Resumed();
+        Invoker.WaitForTasksCompletion.waitFor(future, invocation);
+        assertEquals(1, invocation.latch.getCount());
+        future.invoke("done");
+        assertTrue(invocation.await());
+    }
+
+    @Test
+    public void resumesOnSmartFutureInnerCompletion() throws Exception {
+        SmartFuture<String> future = new SmartFuture<String>();
+        FutureTask<String> inner = new FutureTask<String>(new Runnable() {
+
+            public void run() {
+            }
+        }, "done");
+        future.wrap(inner);
+        Resumed invocation = new Resumed();
+        Invoker.WaitForTasksCompletion.waitFor(future, invocation);
+        assertEquals(1, invocation.latch.getCount());
+        // Nobody invokes the SmartFuture
+        inner.run();
+        assertTrue(invocation.await());
+
+        // Resumed once, by its callback or by the poller
+        final CountDownLatch runs = new CountDownLatch(2);
+        future = new SmartFuture<String>();
+        inner = new FutureTask<String>(new Runnable() {
+
+            public void run() {
+            }
+        }, "done");
+        future.wrap(inner);
+        Invoker.WaitForTasksCompletion.waitFor(future, new Resumed() {
+
+            @Override
+            public void run() {
+                runs.countDown();
+            }
+        });
+        inner.run();
+        future.invoke("done");
+        assertFalse(runs.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, runs.getCount());
+    }
+
+    @Test
+    public void pollsOpaqueFutures() throws Exception {
+        FutureTask<String> task = new FutureTask<String>(new Runnable() {
+
+            public void run() {
+            }
+        }, "done");
+        Resumed invocation = new Resumed();
+        Invoker.WaitForTasksCompletion.waitFor(task, invocation);
+        assertFalse(invocation.latch.await(100, TimeUnit.MILLISECONDS));
+        task.run();
+        assertTrue(invocation.await());
+
+        Resumed again = new Resumed();
+        Invoker.WaitForTasksCompletion.waitFor(task, again);
+        assertTrue(again.await());
+    }
+
+    @Test
+    public void backsOffUpToTheMaximumDelay() {
+        Invoker.WaitForTasksCompletion.Waiting waiting = new Invoker.WaitForTasksCompletion.Waiting(new FutureTask<String>(new Runnable() {
+
+            public void run() {
+            }
+        }, "done"), new Resumed());
+        assertEquals(Invoker.WaitForTasksCompletion.MIN_DELAY, waiting.delay);
+        for (int i = 0; i < 10; i++) {
+            waiting.backoff();
+        }
+        assertEquals(Invoker.WaitForTasksCompletion.MAX_DELAY, waiting.delay);
+    }
+}
@@ -0,0 +1,154 @@
+package play.data.parsing;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.PlayBuilder;
+import play.data.Upload;
+import play.libs.IO;
+import play.mvc.Http.Header;
+import play.mvc.Http.Request;
+
+import static org.junit.Assert.*;
+
+public class MappedMultipartParserTest {
+
+    File tmpDir;
+    File dir;
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        tmpDir = Play.tmpDir;
+        dir = new File(System.getProperty("java.io.tmpdir"), "MappedMultipartParserTest" + System.nanoTime());
+        dir.mkdirs();
+        Play.tmpDir = dir;
+        Request.current.set(new Request());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Play.tmpDir = tmpDir;
+        TempFilePlugin.tempFolder.remove();
+        Request.current.remove();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    FileInputStream body(String content) throws Exception {
+        File file = new File(dir, "body");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("utf-8"));
+        out.close();
+        return new FileInputStream(file);
+    }
+
+    @Test
+    public void parsesFieldsAndFiles() throws Exception {
+        FileInputStream body = body("preamble\r\n"
+                + "--AaB03x\r\n"
+                + "Content-Disposition: form-data; name=\"comment\"\r\n"
+                + "\r\n"
+                + "Hello\r\nWorld\r\n"
+                + "--AaB03x\r\n"
+                + "Content-Disposition: form-data; name=\"attachment\"; filename=\"notes.txt\"\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "--AaB03 is not the boundary\r\n"
+                + "--AaB03x\r\n"
+                + "Content-Disposition: form-data; name=\"empty\"; filename=\"\"\r\n"
+                + "\r\n"
+                + "\r\n"
+                + "--AaB03x--\r\n");
+        Map<String, String[]> params = new MappedMultipartParser().parse(body, "multipart/form-data; boundary=AaB03x", "utf-8");
+
+        assertEquals("Hello\r\nWorld", params.get("comment")[0]);
+        assertEquals("attachment", params.get("attachment")[0]);
+        // No file selected: an empty upload, as ApacheMultipartParser gives
+        assertEquals("empty", params.get("empty")[0]);
+        @SuppressWarnings("unchecked") List<Upload> uploads = (List<Upload>) Request.current().args.get("__UPLOADS");
+        assertEquals(2, uploads.size());
+        Upload upload = uploads.get(0);
+        assertEquals("notes.txt", upload.getFileName());
+        assertEquals("text/plain", upload.getContentType());
+        assertEquals("--AaB03 is not the boundary", new String(IO.readContent(upload.asFile()), "utf-8"));
+        assertEquals("", uploads.get(1).getFileName());
+        assertEquals(0L, uploads.get(1).getSize().longValue());
+        assertEquals(0, body.available());
+        body.close();
+    }
+
+    @Test
+    public void parsesAsTheStreamParser() throws Exception {
+        String content = "--AaB03x\r\n"
+                + "Content-Disposition: form-data; name=\"comment\"\r\n"
+                + "Content-Type: text/plain; charset=ISO-8859-1\r\n"
+                + "\r\n"
+                + "caf\u00e9\r\n"
+                + "--AaB03x\r\n"
+                + "Content-Disposition: form-data; name=\"comment\"\r\n"
+                + "\r\n"
+                + "second\r\n"
+                + "--AaB03x\r\n"
+                + "Content-Disposition: form-data; name=\"attachment\"; filename=\" C:\\Documents\\notes.txt \"\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "Hello\r\n"
+                + "--AaB03x\r\n"
+                + "Content-Disposition: form-data; name=\"empty\"; filename=\"\"\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + "\r\n"
+                + "\r\n"
+                + "--AaB03x\r\n"
+                + "Content-Disposition: form-data; name=\"unnamed\"; filename\r\n"
+                + "\r\n"
+                + "\r\n"
+                + "--AaB03x--\r\n";
+        Request request = Request.current();
+        request.headers.put("content-type", new Header("content-type", "multipart/form-data; boundary=AaB03x"));
+        request.encoding = "utf-8";
+
+        Map<String, String[]> mapped = new MappedMultipartParser().parse(body(content));
+        @SuppressWarnings("unchecked") List<Upload> mappedUploads = (List<Upload>) request.args.remove("__UPLOADS");
+        TempFilePlugin.tempFolder.remove();
+        Map<String, String[]> streamed = new ApacheMultipartParser().parseStream(new ByteArrayInputStream(content.getBytes("utf-8")));
+        @SuppressWarnings("unchecked") List<Upload> streamedUploads = (List<Upload>) request.args.get("__UPLOADS");
+
+        assertEquals(streamed.keySet(), mapped.keySet());
+        for (String name : streamed.keySet()) {
+            assertArrayEquals(name, streamed.get(name), mapped.get(name));
+        }
+        assertEquals(3, streamedUploads.size());
+        assertEquals(streamedUploads.size(), mappedUploads.size());
+        for (int i = 0; i < streamedUploads.size(); i++) {
+            Upload expected = streamedUploads.get(i);
+            Upload actual = mappedUploads.get(i);
+            assertEquals(expected.getFieldName(), actual.getFieldName());
+            assertEquals(expected.getFileName(), actual.getFileName());
+            assertEquals(expected.getContentType(), actual.getContentType());
+            assertEquals(expected.getSize(), actual.getSize());
+            assertArrayEquals(expected.asBytes(), actual.asBytes());
+        }
+        assertEquals("notes.txt", mappedUploads.get(0).getFileName());
+    }
+
+    @Test
+    public void findsPatterns() {
+        ByteBuffer content = ByteBuffer.wrap("abcab\r\n--xyz\r\n--xy".getBytes());
+        byte[] delimiter = "\r\n--xy".getBytes();
+        int[] shifts = MappedMultipartParser.shifts(delimiter);
+        assertEquals(5, MappedMultipartParser.indexOf(content, delimiter, shifts, 0));
+        assertEquals(12, MappedMultipartParser.indexOf(content, delimiter, shifts, 6));
+        assertEquals(-1, MappedMultipartParser.indexOf(content, delimiter, shifts, 13));
+    }
+}
@@ -0,0 +1,32 @@
+package play.exceptions;
+
+import java.sql.SQLTimeoutException;
+
+import org.hibernate.QueryTimeoutException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeadlineExceededExceptionTest {
+
+    @Test
+    public void findsTheExceededDeadlineInTheCauses() {
+        assertTrue(DeadlineExceededException.isCause(new UnexpectedException(new DeadlineExceededException("HttpRequest deadline passed"))));
+        assertFalse(DeadlineExceededException.isCause(new UnexpectedException("Oops")));
+        assertFalse(DeadlineExceededException.isCause(null));
+    }
+
+    @Test
+    public void takesTheQueryTimeoutsForTheDeadlineOnlyWhenThereIsOne() {
+        Exception jdbc = new UnexpectedException(new DatabaseException("Query timed out", new SQLTimeoutException("Statement cancelled")));
+        Exception hibernate = new javax.persistence.PersistenceException(new QueryTimeoutException("Query timed out", new SQLTimeoutException("Statement cancelled"), "select 1"));
+        Exception jpa = new javax.persistence.QueryTimeoutException("Query timed out");
+
+        assertFalse(DeadlineExceededException.isCause(jdbc));
+        assertFalse(DeadlineExceededException.isCause(hibernate, false));
+        assertTrue(DeadlineExceededException.isCause(jdbc, true));
+        assertTrue(DeadlineExceededException.isCause(hibernate, true));
+        assertTrue(DeadlineExceededException.isCause(jpa, true));
+        assertFalse(DeadlineExceededException.isCause(new DatabaseException("Connection refused"), true));
+    }
+}
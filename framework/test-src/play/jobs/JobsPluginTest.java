@@ -0,0 +1,76 @@
+package play.jobs;
+
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.PlayBuilder;
+import play.libs.F.Promise;
+import play.utils.WheelTimer;
+
+import static org.junit.Assert.*;
+
+public class JobsPluginTest {
+
+    public static class Report extends Job<String> {
+
+        @Override
+        public String doJobWithResult() {
+            return "done";
+        }
+    }
+
+    ScheduledThreadPoolExecutor executor;
+    Play.Mode mode;
+    boolean started;
+
+    @Before
+    public void setUp() {
+        mode = Play.mode;
+        started = Play.started;
+        new PlayBuilder().build();
+        executor = JobsPlugin.executor;
+        JobsPlugin.executor = new ScheduledThreadPoolExecutor(1);
+        JobsPlugin.scheduledJobs = new ArrayList<Job>();
+    }
+
+    @After
+    public void tearDown() {
+        JobsPlugin.executor.shutdownNow();
+        JobsPlugin.executor = executor;
+        JobsPlugin.scheduledJobs = null;
+        JobsPlugin.delayedJobs.clear();
+        Play.mode = mode;
+        Play.started = started;
+    }
+
+    @Test
+    public void listsAndCancelsTheDelayedJobs() {
+        int pending = WheelTimer.getPending();
+        new Report().in(3600);
+        assertEquals(pending + 1, WheelTimer.getPending());
+
+        String status = new JobsPlugin().getStatus();
+        assertTrue(status, status.contains("Waiting jobs:"));
+        assertTrue(status, status.contains(Report.class.getName() + " will run in 3599 seconds"));
+
+        new JobsPlugin().onApplicationStop();
+        assertTrue(JobsPlugin.delayedJobs.isEmpty());
+        assertEquals(pending, WheelTimer.getPending());
+    }
+
+    @Test
+    public void forgetsTheDelayedJobsOnceRun() throws Exception {
+        Play.mode = Play.Mode.PROD;
+        Play.started = true;
+        Promise<String> promise = new Report().in(0);
+        assertEquals("done", promise.get(5, TimeUnit.SECONDS));
+        assertTrue(JobsPlugin.delayedJobs.isEmpty());
+        assertFalse(new JobsPlugin().getStatus().contains("Waiting jobs:"));
+    }
+}
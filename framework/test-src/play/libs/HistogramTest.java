@@ -0,0 +1,58 @@
+package play.libs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsCoverTheirDurations() {
+        for (long micros = 0; micros < 100000; micros++) {
+            int index = Histogram.index(micros);
+            assertTrue(micros <= Histogram.upperBound(index));
+            assertTrue(index == 0 || micros > Histogram.upperBound(index - 1));
+        }
+        assertEquals(Histogram.BUCKETS - 1, Histogram.index(Histogram.MAX_MICROS));
+        assertEquals(Histogram.MAX_MICROS, Histogram.upperBound(Histogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void computesPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.percentile(0.5));
+        for (int i = 1; i <= 1000; i++) {
+            // 1 ms to 1 s
+            histogram.record(i * 1000000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500000L, histogram.getSum());
+        assertWithin(500000, histogram.percentile(0.5));
+        assertWithin(950000, histogram.percentile(0.95));
+        assertWithin(990000, histogram.percentile(0.99));
+        assertEquals(1000000, histogram.percentile(1));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentile(0.99));
+    }
+
+    static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " is not close to " + expected, actual >= expected && actual <= expected * 1.125);
+    }
+
+    @Test
+    public void exportsPrometheusSummaries() {
+        Metrics.reset();
+        Metrics.Phase.ACTION.histogram().record(2000000);
+        String text = Metrics.toPrometheus();
+        assertTrue(text.contains("# TYPE play_request_phase_seconds summary\n"));
+        assertTrue(text.contains("play_request_phase_seconds{phase=\"action\",quantile=\"0.99\"} 0.002000\n"));
+        assertTrue(text.contains("play_request_phase_seconds_sum{phase=\"action\"} 0.002000\n"));
+        assertTrue(text.contains("play_request_phase_seconds_count{phase=\"action\"} 1\n"));
+        assertTrue(text.contains("play_request_phase_seconds_count{phase=\"parse\"} 0\n"));
+        assertEquals(1, Metrics.toJson().getAsJsonObject("action").get("count").getAsLong());
+        Metrics.reset();
+    }
+}
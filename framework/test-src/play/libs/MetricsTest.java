@@ -0,0 +1,76 @@
+package play.libs;
+
+import org.junit.After;
+import org.junit.Test;
+
+import play.mvc.Router;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+    }
+
+    static Router.Route route(int line) {
+        Router.Route route = new Router.Route();
+        route.method = "GET";
+        route.path = "/users/{id}";
+        route.action = "Users.show";
+        route.routesFile = "conf/routes";
+        route.routesFileLine = line;
+        return route;
+    }
+
+    @Test
+    public void countsRequestsByRoute() {
+        Router.Route route = route(12);
+        Metrics.RouteStats stats = Metrics.route(route);
+        assertSame(stats, Metrics.route(route));
+
+        long first = stats.start();
+        long second = stats.start();
+        assertEquals(2, stats.getInFlight());
+        stats.stop(first, 200);
+        stats.stop(second, 404);
+        assertEquals(0, stats.getInFlight());
+        assertEquals(1, stats.getCount(2));
+        assertEquals(1, stats.getCount(4));
+        assertEquals(0, stats.getCount(5));
+        assertEquals(2, stats.histogram().getCount());
+    }
+
+    @Test
+    public void keepsTheStatisticsOfReloadedRoutes() {
+        Metrics.RouteStats stats = Metrics.route(route(12));
+        stats.stop(stats.start(), 200);
+
+        Metrics.routesReloaded();
+        Router.Route moved = route(14);
+        assertSame(stats, Metrics.route(moved));
+        assertEquals("conf/routes:14", stats.location);
+        assertEquals(1, stats.getCount(2));
+        assertEquals(1, Metrics.routes().size());
+    }
+
+    @Test
+    public void exportsRouteMetrics() {
+        Metrics.RouteStats stats = Metrics.route(route(12));
+        stats.stop(stats.start(), 500);
+        stats.start();
+        String labels = "route=\"conf/routes:12\",method=\"GET\",path=\"/users/{id}\",action=\"Users.show\"";
+        String text = Metrics.toPrometheus();
+        assertTrue(text.contains("play_route_requests_total{" + labels + ",status=\"5xx\"} 1\n"));
+        assertTrue(text.contains("play_route_requests_total{" + labels + ",status=\"2xx\"} 0\n"));
+        assertTrue(text.contains("play_route_in_flight{" + labels + "} 1\n"));
+        assertTrue(text.contains("play_route_seconds_count{" + labels + "} 1\n"));
+        assertEquals(1, Metrics.routesToJson().get(0).getAsJsonObject().get("5xx").getAsLong());
+    }
+
+    @Test
+    public void escapesLabelValues() {
+        assertEquals("a\\\"b\\\\c\\n", Metrics.escape("a\"b\\c\n"));
+    }
+}
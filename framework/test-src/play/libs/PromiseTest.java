@@ -0,0 +1,137 @@
+package play.libs;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import play.libs.F.Function;
+import play.libs.F.Promise;
+
+import static org.junit.Assert.*;
+
+public class PromiseTest {
+
+    static final Function<Integer, Integer> twice = new Function<Integer, Integer>() {
+
+        public Integer apply(Integer value) {
+            return value * 2;
+        }
+    };
+
+    static final Function<Integer, Integer> fail = new Function<Integer, Integer>() {
+
+        public Integer apply(Integer value) {
+            throw new IllegalStateException("failed");
+        }
+    };
+
+    static Throwable exception(Promise<?> promise) throws InterruptedException {
+        try {
+            promise.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (TimeoutException e) {
+            fail("The promise is not redeemed");
+        }
+        return null;
+    }
+
+    @Test
+    public void mapsTheValueInTheRedeemingThread() throws Exception {
+        Promise<Integer> promise = new Promise<Integer>();
+        Promise<Integer> doubled = promise.map(twice);
+        assertFalse(doubled.isDone());
+        promise.invoke(21);
+        assertTrue(doubled.isDone());
+        assertEquals(42, doubled.get().intValue());
+        assertTrue(exception(promise.map(fail)) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void mapsTheValueInAnExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Promise<Integer> promise = new Promise<Integer>();
+            final Thread caller = Thread.currentThread();
+            Promise<Boolean> inExecutor = promise.map(new Function<Integer, Boolean>() {
+
+                public Boolean apply(Integer value) {
+                    return Thread.currentThread() != caller;
+                }
+            }, executor);
+            promise.invoke(1);
+            assertTrue(inExecutor.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void chainsAsynchronousOperations() throws Exception {
+        Promise<Integer> first = new Promise<Integer>();
+        final Promise<String> second = new Promise<String>();
+        Promise<String> chained = first.flatMap(new Function<Integer, Promise<String>>() {
+
+            public Promise<String> apply(Integer value) {
+                return second.map(new Function<String, String>() {
+
+                    public String apply(String text) {
+                        return text + value;
+                    }
+                });
+            }
+        });
+        first.invoke(1);
+        assertFalse(chained.isDone());
+        second.invoke("page ");
+        assertEquals("page 1", chained.get());
+    }
+
+    @Test
+    public void propagatesAndRecoversTheExceptions() throws Exception {
+        Promise<Integer> promise = new Promise<Integer>();
+        Promise<Integer> recovered = promise.map(twice).recover(new Function<Throwable, Integer>() {
+
+            public Integer apply(Throwable e) {
+                return e instanceof ArithmeticException ? -1 : 0;
+            }
+        });
+        promise.invokeWithException(new ArithmeticException());
+        assertEquals(-1, recovered.get().intValue());
+
+        Promise<Integer> ok = new Promise<Integer>();
+        ok.invoke(2);
+        assertEquals(2, ok.recover(null).get().intValue());
+    }
+
+    @Test
+    public void zipsTwoPromises() throws Exception {
+        Promise<Integer> a = new Promise<Integer>();
+        Promise<String> b = new Promise<String>();
+        Promise<F.Tuple<Integer, String>> both = a.zip(b);
+        b.invoke("b");
+        assertFalse(both.isDone());
+        a.invoke(1);
+        assertEquals(1, both.get()._1.intValue());
+        assertEquals("b", both.get()._2);
+
+        Promise<Integer> failed = new Promise<Integer>();
+        failed.invokeWithException(new IllegalArgumentException());
+        assertTrue(exception(failed.zip(new Promise<String>())) instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void failsAfterTheTimeout() throws Exception {
+        Promise<Integer> never = new Promise<Integer>();
+        assertTrue(exception(never.timeout(10, TimeUnit.MILLISECONDS)) instanceof TimeoutException);
+
+        Promise<Integer> promise = new Promise<Integer>();
+        Promise<Integer> inTime = promise.timeout(1, TimeUnit.HOURS);
+        promise.invoke(1);
+        assertEquals(1, inTime.get().intValue());
+    }
+}
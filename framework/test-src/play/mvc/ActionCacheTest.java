@@ -0,0 +1,144 @@
+package play.mvc;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.sf.ehcache.CacheManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.PlayBuilder;
+import play.cache.Cache;
+import play.cache.CacheFor;
+import play.cache.EhCacheImpl;
+import play.mvc.results.Ok;
+import play.mvc.results.Result;
+
+import static org.junit.Assert.*;
+
+public class ActionCacheTest {
+
+    @CacheFor("1h")
+    public static void page() {
+    }
+
+    @CacheFor(value = "1h", stale = "1h", headers = "Accept-Language")
+    public static void localizedPage() {
+    }
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        // Another test may have left the cache
+        CacheManager.create().removeCache("play");
+        Cache.cacheImpl = EhCacheImpl.newInstance();
+        Cache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        // Let other tests create their own cache
+        CacheManager.create().removeCache("play");
+    }
+
+    @SuppressWarnings("deprecation")
+    static Http.Request request(String url) {
+        Http.Request request = new Http.Request();
+        request.method = "GET";
+        request.url = url;
+        request.querystring = "";
+        return request;
+    }
+
+    static ActionCache cache(Http.Request request, String action) throws Exception {
+        return ActionCache.get(request, ActionCacheTest.class.getMethod(action));
+    }
+
+    @Test
+    public void onlyCachesGetRequests() throws Exception {
+        Http.Request request = request("/page");
+        assertNotNull(cache(request, "page"));
+        request.method = "POST";
+        assertNull(cache(request, "page"));
+    }
+
+    @Test
+    public void keyVariesWithHeaders() throws Exception {
+        Http.Request english = request("/page");
+        english.headers.put("accept-language", new Http.Header("accept-language", "en"));
+        Http.Request french = request("/page");
+        french.headers.put("accept-language", new Http.Header("accept-language", "fr"));
+
+        assertEquals(cache(english, "page").key, cache(french, "page").key);
+        assertFalse(cache(english, "localizedPage").key.equals(cache(french, "localizedPage").key));
+    }
+
+    @Test
+    public void concurrentMissesWaitForTheFirstOne() throws Exception {
+        final Http.Request request = request("/page");
+        ActionCache first = cache(request, "page");
+        assertNull(first.lookup(request));
+
+        final AtomicReference<Result> waited = new AtomicReference<Result>();
+        Thread second = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    waited.set(cache(request, "page").lookup(request));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        second.start();
+        Thread.sleep(100);
+        assertTrue(second.isAlive());
+
+        Result result = new Ok();
+        first.store(result);
+        first.release();
+        second.join(5000);
+        assertSame(result, waited.get());
+        assertTrue(ActionCache.computing.isEmpty());
+    }
+
+    @Test
+    public void concurrentMissesComputeItTooPastTheWait() throws Exception {
+        Http.Request request = request("/page");
+        ActionCache first = cache(request, "page");
+        assertNull(first.lookup(request));
+
+        Play.configuration.setProperty("play.cacheFor.wait", "0s");
+        long start = System.currentTimeMillis();
+        assertNull(cache(request, "page").lookup(request));
+        Play.configuration.setProperty("play.cacheFor.wait", "1s");
+        assertNull(cache(request, "page").lookup(request));
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+
+        first.release();
+        assertTrue(ActionCache.computing.isEmpty());
+    }
+
+    @Test
+    public void staleResultIsServedWhileRefreshing() throws Exception {
+        Http.Request request = request("/page");
+        ActionCache cache = cache(request, "localizedPage");
+        Result stale = new Ok();
+        Cache.set(cache.key, new ActionCache.CachedResult(stale, System.currentTimeMillis() - 1000), "1h");
+
+        // Without jobs, the first request refreshes it inline
+        ActionCache refreshing = cache(request, "localizedPage");
+        assertNull(refreshing.lookup(request));
+        // The others get the stale result meanwhile
+        assertSame(stale, cache(request, "localizedPage").lookup(request));
+
+        Result fresh = new Ok();
+        refreshing.store(fresh);
+        refreshing.release();
+        assertSame(fresh, cache(request, "localizedPage").lookup(request));
+        assertTrue(ActionCache.computing.isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package play.mvc;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import controllers.Accounts;
+import play.exceptions.ActionNotFoundException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ActionRegistryTest {
+
+    @Before
+    public void setUp() {
+        ActionRegistry.registry = new ActionRegistry.Registry(null, new ConcurrentHashMap<Method, ActionRegistry.ControllerMethod>());
+        ActionRegistry.build(Arrays.<Class>asList(Accounts.class));
+    }
+
+    @Test
+    public void buildRegistersTheActionsOnly() {
+        List<String> actions = new ArrayList<String>();
+        for (ActionRegistry.Entry entry : ActionRegistry.all()) {
+            actions.add(entry.action);
+        }
+        // The public methods of Controller are resolved as actions too, as Java.findActionMethod does
+        assertThat(actions).contains("Accounts.index", "Accounts.show", "Accounts.redirect").excludes("Accounts.check");
+        assertThat(actions.indexOf("Accounts.index")).isLessThan(actions.indexOf("Accounts.show"));
+    }
+
+    @Test
+    public void getIgnoresCaseAndPackage() throws Exception {
+        ActionRegistry.Entry entry = ActionRegistry.get("Accounts.show");
+        assertThat(entry.controllerClass).isEqualTo(Accounts.class);
+        assertThat(entry.controller).isEqualTo("Accounts");
+        assertThat(entry.method.method).isEqualTo(Accounts.class.getMethod("show", Long.class, String.class));
+        assertThat(ActionRegistry.get("accounts.SHOW")).isSameAs(entry);
+        assertThat(ActionRegistry.get("controllers.Accounts.show")).isSameAs(entry);
+        assertThat(ActionRegistry.method(entry.method.method)).isSameAs(entry.method);
+        try {
+            ActionRegistry.get("Accounts.check");
+            fail("An interceptor is not an action");
+        } catch (ActionNotFoundException e) {
+            // Not registered, and no application classes to resolve it from
+        }
+    }
+
+    @Test
+    public void parameterNamesAreReadOnce() throws Exception {
+        ActionRegistry.ControllerMethod show = ActionRegistry.get("Accounts.show").method;
+        assertThat(show.parameterNames()).isEqualTo(new String[]{"id", "name"});
+        assertThat(show.parameterNames()).isSameAs(show.parameterNames());
+        assertThat(show.simple).isEqualTo(new boolean[]{true, true});
+        assertThat(ActionRegistry.get("Accounts.index").method.parameterNames()).isEmpty();
+    }
+
+    @Test
+    public void buildKeepsTheActionsResolvedSoFar() {
+        ActionRegistry.Registry before = ActionRegistry.registry;
+        ActionRegistry.Entry show = ActionRegistry.get("Accounts.show");
+        ActionRegistry.registry.actions.put("controllers.accounts.legacy", show);
+        ActionRegistry.build(Arrays.<Class>asList(Accounts.class));
+        assertThat(ActionRegistry.registry).isNotSameAs(before);
+        assertThat(ActionRegistry.get("Accounts.legacy")).isSameAs(show);
+        assertThat(ActionRegistry.get("Accounts.show").method).isSameAs(show.method);
+    }
+}
@@ -0,0 +1,161 @@
+package play.mvc;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import play.utils.Java;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class InterceptorChainTest {
+
+    public static class Base extends Controller {
+
+        @Before(priority = 2)
+        static void last() {
+        }
+
+        @Before(only = "index")
+        static void onlyIndex() {
+        }
+
+        @Before(unless = {"index", "show"})
+        static void notIndexNorShow() {
+        }
+
+        @After(only = "show")
+        static void afterShow() {
+        }
+
+        @After(priority = -1)
+        static void afterAll() {
+        }
+
+        @Finally(unless = "index")
+        static void cleanup(Throwable t) {
+        }
+
+        @Finally(priority = 1)
+        static void cleanupAll() {
+        }
+
+        @Catch(value = IllegalStateException.class, priority = 1)
+        static void illegalState(Throwable t) {
+        }
+
+        @Catch
+        static void any(Throwable t) {
+        }
+    }
+
+    public static class Sub extends Base {
+
+        @Before(priority = -1)
+        static void first() {
+        }
+
+        @Before(only = {"show", "Other.edit"})
+        static void onlyShow() {
+        }
+    }
+
+    @Test
+    public void chainsMatchTheUncachedInterceptors() {
+        String base = Base.class.getName().substring(12);
+        String sub = Sub.class.getName().substring(12);
+        List<String> actions = new ArrayList<String>();
+        for (String controller : new String[]{base, base.replace("$", ""), sub, sub.replace("$", ""), "Other"}) {
+            for (String action : new String[]{"index", "show", "edit"}) {
+                actions.add(controller + "." + action);
+            }
+        }
+        for (String action : actions) {
+            InterceptorChain chain = InterceptorChain.get(Sub.class, action);
+            assertThat(chain.befores).as(action).isEqualTo(uncached(Before.class, action, true));
+            assertThat(chain.afters).as(action).isEqualTo(uncached(After.class, action, false));
+            assertThat(chain.finallies).as(action).isEqualTo(uncached(Finally.class, action, false));
+            assertThat(chain.catches).as(action).isEqualTo(sorted(Catch.class).toArray());
+            assertThat(InterceptorChain.get(Sub.class, action)).isSameAs(chain);
+        }
+        assertThat(InterceptorChain.get(Sub.class, sub.replace("$", "") + ".index").befores).hasSize(3);
+    }
+
+    @Test
+    public void chainsHandleTheThrowableParameters() {
+        InterceptorChain chain = InterceptorChain.get(Sub.class, "Other.show");
+        assertThat(chain.finallies).hasSize(2);
+        assertThat(chain.finallies[0].getName()).isEqualTo("cleanup");
+        assertThat(chain.finallyWithThrowable).isEqualTo(new boolean[]{true, false});
+        assertThat(chain.catches[0].getName()).isEqualTo("any");
+        assertThat(chain.catchExceptions[0]).isEqualTo(new Class<?>[]{Exception.class});
+        assertThat(chain.catchExceptions[1]).isEqualTo(new Class<?>[]{IllegalStateException.class});
+    }
+
+    /**
+     * The interceptors selected as ActionInvoker did for each invocation, before the chains
+     */
+    static Object[] uncached(Class<? extends Annotation> annotationType, String action, boolean stripDollar) {
+        List<Method> selected = new ArrayList<Method>();
+        for (Method method : sorted(annotationType)) {
+            String[] only;
+            String[] unless;
+            Annotation annotation = method.getAnnotation(annotationType);
+            if (annotation instanceof Before) {
+                only = ((Before) annotation).only();
+                unless = ((Before) annotation).unless();
+            } else if (annotation instanceof After) {
+                only = ((After) annotation).only();
+                unless = ((After) annotation).unless();
+            } else {
+                only = ((Finally) annotation).only();
+                unless = ((Finally) annotation).unless();
+            }
+            String controller = method.getDeclaringClass().getName().substring(12);
+            if (stripDollar) {
+                controller = controller.replace("$", "");
+            }
+            boolean skip = false;
+            for (String un : only) {
+                if (!un.contains(".")) {
+                    un = controller + "." + un;
+                }
+                if (un.equals(action)) {
+                    skip = false;
+                    break;
+                } else {
+                    skip = true;
+                }
+            }
+            for (String un : unless) {
+                if (!un.contains(".")) {
+                    un = controller + "." + un;
+                }
+                if (un.equals(action)) {
+                    skip = true;
+                    break;
+                }
+            }
+            if (!skip) {
+                selected.add(method);
+            }
+        }
+        return selected.toArray();
+    }
+
+    static List<Method> sorted(final Class<? extends Annotation> annotationType) {
+        List<Method> methods = new ArrayList<Method>(Java.findAllAnnotatedMethods(Sub.class, annotationType));
+        Collections.sort(methods, new Comparator<Method>() {
+
+            public int compare(Method m1, Method m2) {
+                return InterceptorChain.priority(m1.getAnnotation(annotationType)) - InterceptorChain.priority(m2.getAnnotation(annotationType));
+            }
+        });
+        return methods;
+    }
+}
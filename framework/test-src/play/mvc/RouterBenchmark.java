@@ -0,0 +1,66 @@
+package play.mvc;
+
+import java.util.Map;
+
+/**
+ * Measures the cost of routing a request as the number of routes grows.
+ * <p/>
+ * Run it with <code>java -cp ... play.mvc.RouterBenchmark</code>. With the compiled routes the lookup time
+ * should stay roughly flat, while the linear scan grows with the routes count.
+ */
+public class RouterBenchmark {
+
+    static final int LOOKUPS = 20000;
+
+    public static void main(String[] args) {
+        int[] sizes = {10, 50, 200, 600, 1000};
+        System.out.println(String.format("%8s %16s %16s", "routes", "indexed ns/op", "linear ns/op"));
+        for (int size : sizes) {
+            String[] paths = load(size);
+            // Warm up
+            indexed(paths);
+            linear(paths);
+            long indexed = indexed(paths);
+            long linear = linear(paths);
+            System.out.println(String.format("%8d %16d %16d", size, indexed / LOOKUPS, linear / LOOKUPS));
+        }
+    }
+
+    static String[] load(int size) {
+        Router.routes.clear();
+        Router.appendRoute("GET", "/", "Application.index", null, null, null, 0);
+        for (int i = 0; i < size; i++) {
+            Router.appendRoute("GET", "/section" + i + "/items", "Section" + i + ".list", null, null, null, 0);
+            Router.appendRoute("GET", "/section" + i + "/items/{<[0-9]+>id}", "Section" + i + ".show", null, null, null, 0);
+            Router.appendRoute("POST", "/section" + i + "/items/{id}/edit", "Section" + i + ".save", null, null, null, 0);
+        }
+        Router.appendRoute("*", "/{controller}/{action}", "{controller}.{action}", null, null, null, 0);
+        return new String[]{
+            "/section" + (size / 2) + "/items/42",
+            "/section" + (size - 1) + "/items",
+            "/application/index"
+        };
+    }
+
+    static long indexed(String[] paths) {
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            Router.route("GET", paths[i % paths.length]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    static long linear(String[] paths) {
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String path = paths[i % paths.length];
+            for (Router.Route route : Router.routes) {
+                Map<String, String> found = route.matches("GET", path, null, null);
+                if (found != null) {
+                    break;
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -4,6 +4,12 @@ import com.ning.http.client.RequestBuilder;
 import org.junit.Test;
 import play.Play;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.Map;
 import java.util.Properties;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -46,4 +52,128 @@ public class RouterTest {
         Play.configuration.setProperty("application.baseUrl", "http://b/");
         assertThat(Router.getBaseUrl()).isEqualTo("http://b");
     }
+
+    @Test
+    public void test_routeIndex_keeps_declaration_order() {
+        Router.routes.clear();
+        Router.appendRoute("GET", "/", "Application.index", null, null, null, 0);
+        Router.appendRoute("GET", "/users/{id}", "Users.show", null, null, null, 0);
+        Router.appendRoute("GET", "/users/new", "Users.blank", null, null, null, 0);
+        Router.appendRoute("POST", "/users/?", "Users.create", null, null, null, 0);
+        Router.appendRoute("GET", "/users/{<[0-9]+>id}/edit", "Users.edit", null, null, null, 0);
+        Router.appendRoute("GET", "/files/", "staticDir:public", null, null, null, 0);
+        Router.appendRoute("GET", "/{<a|b>letter}/x", "Letters.x", null, null, null, 0);
+        Router.appendRoute("*", "/{controller}/{action}", "{controller}.{action}", null, null, null, 0);
+
+        assertThat(Router.route("GET", "/").get("action")).isEqualTo("Application.index");
+        assertThat(Router.route("GET", "/users/new").get("action")).isEqualTo("Users.show");
+        assertThat(Router.route("GET", "/users/12/edit").get("action")).isEqualTo("Users.edit");
+        assertThat(Router.route("POST", "/users").get("action")).isEqualTo("Users.create");
+        assertThat(Router.route("POST", "/users/").get("action")).isEqualTo("Users.create");
+        assertThat(Router.route("HEAD", "/users/12").get("action")).isEqualTo("Users.show");
+        assertThat(Router.route("PATCH", "/users/12").get("action")).isEqualTo("{controller}.{action}");
+        assertThat(Router.route("GET", "/b/x").get("action")).isEqualTo("Letters.x");
+        assertThat(Router.route("GET", "/users/12/delete")).isEmpty();
+
+        String[] methods = {"GET", "POST", "HEAD", "PUT", "PATCH", null};
+        String[] paths = {"/", "", "/users", "/users/", "/users/1", "/users/new", "/users/1/edit", "/users/x/edit",
+                "/a/x", "/c/x", "/Users/1", "/foo/bar", "/foo/bar/baz", "//", "/users//edit"};
+        for (String method : methods) {
+            for (String path : paths) {
+                assertThat(Router.route(method, path)).as(method + " " + path).isEqualTo(linearRoute(method, path));
+            }
+        }
+    }
+
+    @Test
+    public void test_routeIndex_follows_routes_changes() {
+        Router.routes.clear();
+        Router.appendRoute("GET", "/users/{id}", "Users.show", null, null, null, 0);
+        assertThat(Router.route("GET", "/users/new").get("action")).isEqualTo("Users.show");
+
+        Router.prependRoute("GET", "/users/new", "Users.blank");
+        assertThat(Router.route("GET", "/users/new").get("action")).isEqualTo("Users.blank");
+
+        Router.routes.remove(0);
+        assertThat(Router.route("GET", "/users/new").get("action")).isEqualTo("Users.show");
+
+        Router.routes.clear();
+        assertThat(Router.route("GET", "/users/new")).isEmpty();
+    }
+
+    @Test
+    public void test_routeIndex_follows_indirect_routes_changes() {
+        Router.routes.clear();
+        Router.appendRoute("GET", "/users/{id}", "Users.show", null, null, null, 0);
+        Router.appendRoute("GET", "/users/new", "Users.blank", null, null, null, 0);
+        assertThat(Router.route("GET", "/users/new").get("action")).isEqualTo("Users.show");
+
+        // Collections.sort goes through List.sort and the list iterator
+        Collections.sort(Router.routes, new Comparator<Router.Route>() {
+
+            public int compare(Router.Route a, Router.Route b) {
+                return a.action.compareTo(b.action);
+            }
+        });
+        assertThat(Router.route("GET", "/users/new").get("action")).isEqualTo("Users.blank");
+
+        Router.routes.subList(0, 1).clear();
+        assertThat(Router.route("GET", "/users/new").get("action")).isEqualTo("Users.show");
+
+        Router.Route route = Router.routes.get(0);
+        Router.routes.listIterator().add(route);
+        ListIterator<Router.Route> iterator = Router.routes.listIterator();
+        iterator.next();
+        iterator.set(Router.getRoute("GET", "/users/new", "Users.blank", null, null));
+        assertThat(Router.route("GET", "/users/new").get("action")).isEqualTo("Users.blank");
+
+        Iterator<Router.Route> routes = Router.routes.iterator();
+        routes.next();
+        routes.remove();
+        assertThat(Router.routes).containsExactly(route);
+        assertThat(Router.route("GET", "/users/new").get("action")).isEqualTo("Users.show");
+    }
+
+    @Test
+    public void test_reverse() {
+        Router.routes.clear();
+        Router.appendRoute("GET", "/", "Application.index", null, null, null, 0);
+        Router.appendRoute("GET", "/users/{<[0-9]+>id}", "Users.show", null, null, null, 0);
+        Router.appendRoute("GET", "/users/{name}", "Users.show", null, null, null, 0);
+        Router.appendRoute("GET", "/feed", "Application.feed", "(type:'rss')", null, null, 0);
+        Router.appendRoute("*", "/{controller}/{action}", "{controller}.{action}", null, null, null, 0);
+
+        assertThat(Router.reverse("Application.index").url).isEqualTo("/");
+        assertThat(Router.reverse("controllers.Application.index").url).isEqualTo("/");
+        assertThat(Router.reverse("Users.show", args("id", 12)).url).isEqualTo("/users/12");
+        assertThat(Router.reverse("Users.show", args("id", "x y")).url).isEqualTo("/users/show?id=x+y");
+        assertThat(Router.reverse("Users.show", args("name", "x y")).url).isEqualTo("/users/x%20y");
+        assertThat(Router.reverse("Users.show", args("id", 12, "page", 2)).url).isEqualTo("/users/12?page=2");
+        assertThat(Router.reverse("Application.feed").url).isEqualTo("/application/feed");
+        assertThat(Router.reverse("Application.feed", args("type", "rss")).url).isEqualTo("/feed");
+        assertThat(Router.reverse("Application.feed", args("type", "rss")).method).isEqualTo("GET");
+
+        // The memoized routes follow the routes list
+        Router.prependRoute("GET", "/people/{id}", "Users.show");
+        assertThat(Router.reverse("Users.show", args("id", 12)).url).isEqualTo("/people/12");
+    }
+
+    private static Map<String, Object> args(Object... keyValues) {
+        Map<String, Object> args = new HashMap<String, Object>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            args.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return args;
+    }
+
+    private static Map<String, String> linearRoute(String method, String path) {
+        for (Router.Route route : Router.routes) {
+            Map<String, String> args = route.matches(method, path, null, null);
+            if (args != null) {
+                args.put("action", route.action);
+                return args;
+            }
+        }
+        return new HashMap<String, String>(16);
+    }
 }
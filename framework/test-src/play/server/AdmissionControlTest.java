@@ -0,0 +1,217 @@
+package play.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Invoker;
+import play.Play;
+import play.PlayBuilder;
+import play.mvc.ActionRegistry;
+import play.mvc.Router;
+
+import controllers.Accounts;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControlTest {
+
+    ServerBootstrap bootstrap;
+    Channel server;
+    /**
+     * The accepted connections, closed even if they are no longer read
+     */
+    final ChannelGroup channels = new DefaultChannelGroup();
+    ScheduledThreadPoolExecutor executor;
+    ScheduledThreadPoolExecutor invokerExecutor;
+    Play.Mode mode;
+    boolean started;
+    int maxQueue;
+    long queueTimeout;
+    /**
+     * Holds the only invocation thread
+     */
+    final CountDownLatch busy = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        mode = Play.mode;
+        started = Play.started;
+        new PlayBuilder().build();
+        Play.mode = Play.Mode.PROD;
+        maxQueue = PlayHandler.maxQueue;
+        queueTimeout = PlayHandler.queueTimeout;
+        invokerExecutor = Invoker.executor;
+        executor = new ScheduledThreadPoolExecutor(1);
+        Invoker.executor = executor;
+        executor.submit(new Runnable() {
+
+            public void run() {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    // Stopped
+                }
+            }
+        });
+
+        bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+
+            public ChannelPipeline getPipeline() throws Exception {
+                ChannelPipeline pipeline = Channels.pipeline();
+                pipeline.addLast("channels", new SimpleChannelUpstreamHandler() {
+
+                    @Override
+                    public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+                        channels.add(e.getChannel());
+                        super.channelOpen(ctx, e);
+                    }
+                });
+                pipeline.addLast("decoder", new HttpRequestDecoder());
+                pipeline.addLast("encoder", new HttpResponseEncoder());
+                pipeline.addLast("aggregator", new StreamChunkAggregator(-1, 16));
+                pipeline.addLast("handler", new PlayHandler());
+                return pipeline;
+            }
+        });
+        server = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @After
+    public void tearDown() {
+        busy.countDown();
+        server.close().awaitUninterruptibly();
+        channels.close().awaitUninterruptibly();
+        bootstrap.releaseExternalResources();
+        executor.shutdownNow();
+        Invoker.executor = invokerExecutor;
+        PlayHandler.maxQueue = maxQueue;
+        PlayHandler.queueTimeout = queueTimeout;
+        PlayHandler.queued.set(0);
+        Play.mode = mode;
+        Play.started = started;
+        Router.routes.clear();
+    }
+
+    @Test
+    public void shedsTheRequestsOverTheQueueLimitAndTheOnesThatWaitedTooLong() throws Exception {
+        PlayHandler.maxQueue = 1;
+        PlayHandler.queueTimeout = 50;
+        Socket queued = connect();
+        Socket rejected = connect();
+        try {
+            send(queued, "/queued");
+            waitForQueued(1);
+
+            // Over the limit: rejected at once, while the invocation thread is still busy
+            send(rejected, "/rejected");
+            assertEquals("HTTP/1.1 503 Service Unavailable", readStatus(rejected.getInputStream()));
+            assertEquals(1, PlayHandler.queued.get());
+
+            // Its client has probably given up: dropped instead of invoked
+            Thread.sleep(100);
+            busy.countDown();
+            assertEquals("HTTP/1.1 503 Service Unavailable", readStatus(queued.getInputStream()));
+            waitForQueued(0);
+        } finally {
+            queued.close();
+            rejected.close();
+        }
+    }
+
+    @Test
+    public void closesTheStreamedBodiesOfTheRejectedRequests() throws Exception {
+        Play.started = true;
+        Router.routes.clear();
+        Router.appendRoute("POST", "/upload", "Accounts.upload", null, null, null, 0);
+        ActionRegistry.build(Arrays.<Class>asList(Accounts.class));
+        PlayHandler.maxQueue = 1;
+        PlayHandler.queueTimeout = 1;
+        Socket queued = connect();
+        Socket upload = connect();
+        try {
+            send(queued, "/queued");
+            waitForQueued(1);
+
+            // Rejected as soon as its headers are received, with a first chunk over the memory threshold
+            OutputStream out = upload.getOutputStream();
+            out.write("POST /upload HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes("US-ASCII"));
+            out.write(chunk(32));
+            out.flush();
+            assertEquals("HTTP/1.1 503 Service Unavailable", readStatus(upload.getInputStream()));
+
+            // The rest of the body is discarded, and the connection is still read
+            for (int i = 0; i < 4; i++) {
+                out.write(chunk(32));
+            }
+            out.write("0\r\n\r\n".getBytes("US-ASCII"));
+            send(upload, "/next");
+            assertEquals("HTTP/1.1 503 Service Unavailable", readStatus(upload.getInputStream()));
+        } finally {
+            queued.close();
+            upload.close();
+        }
+    }
+
+    static byte[] chunk(int size) throws IOException {
+        StringBuilder chunk = new StringBuilder(Integer.toHexString(size)).append("\r\n");
+        for (int i = 0; i < size; i++) {
+            chunk.append('x');
+        }
+        return chunk.append("\r\n").toString().getBytes("US-ASCII");
+    }
+
+    Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", ((InetSocketAddress) server.getLocalAddress()).getPort());
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    static void send(Socket socket, String path) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    static void waitForQueued(int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && PlayHandler.queued.get() != expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, PlayHandler.queued.get());
+    }
+
+    /**
+     * Read the status line of a response, and its headers
+     */
+    static String readStatus(InputStream in) throws IOException {
+        String status = PipeliningHandlerTest.readLine(in);
+        while (PipeliningHandlerTest.readLine(in).length() > 0) {
+            // Headers
+        }
+        return status;
+    }
+}
@@ -0,0 +1,130 @@
+package play.server;
+
+import java.util.Date;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.PlayBuilder;
+import play.utils.Utils;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.*;
+import static org.junit.Assert.*;
+
+public class ByteRangesTest {
+
+    Play.Mode mode;
+
+    @Before
+    public void setUp() {
+        mode = Play.mode;
+        new PlayBuilder().build();
+        Play.mode = Play.Mode.PROD;
+    }
+
+    @After
+    public void tearDown() {
+        Play.mode = mode;
+    }
+
+    @Test
+    public void parsesRanges() {
+        ByteRanges ranges = ByteRanges.parse("bytes=0-499, 500-, -100", 1000);
+        assertEquals(3, ranges.size());
+        assertEquals("bytes 0-499/1000", ranges.contentRange(0));
+        assertEquals("bytes 500-999/1000", ranges.contentRange(1));
+        assertEquals("bytes 900-999/1000", ranges.contentRange(2));
+        assertEquals(100, ranges.length(2));
+
+        // Truncated to the content
+        assertEquals("bytes 990-999/1000", ByteRanges.parse("bytes=990-2000", 1000).contentRange(0));
+        assertEquals("bytes 0-999/1000", ByteRanges.parse("bytes=-2000", 1000).contentRange(0));
+    }
+
+    @Test
+    public void ignoresInvalidRanges() {
+        assertNull(ByteRanges.parse(null, 1000));
+        assertNull(ByteRanges.parse("items=0-10", 1000));
+        assertNull(ByteRanges.parse("bytes=10-5", 1000));
+        assertNull(ByteRanges.parse("bytes=a-b", 1000));
+        assertNull(ByteRanges.parse("bytes=5", 1000));
+        StringBuilder many = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= ByteRanges.MAX_RANGES; i++) {
+            many.append(",").append(i * 2).append("-").append(i * 2);
+        }
+        assertNull(ByteRanges.parse(many.toString(), 1000));
+    }
+
+    @Test
+    public void detectsUnsatisfiableRanges() {
+        assertFalse(ByteRanges.parse("bytes=1000-", 1000).isSatisfiable());
+        assertFalse(ByteRanges.parse("bytes=-0", 1000).isSatisfiable());
+        assertFalse(ByteRanges.parse("bytes=0-10", 0).isSatisfiable());
+        assertTrue(ByteRanges.parse("bytes=2000-, 0-0", 1000).isSatisfiable());
+    }
+
+    @Test
+    public void checksIfRange() {
+        long lastModified = 1300000000000L;
+        assertTrue(ByteRanges.ifRangeMatches(null, "\"a\"", lastModified));
+        assertTrue(ByteRanges.ifRangeMatches("\"a\"", "\"a\"", lastModified));
+        assertFalse(ByteRanges.ifRangeMatches("\"b\"", "\"a\"", lastModified));
+        assertFalse(ByteRanges.ifRangeMatches("W/\"a\"", "W/\"a\"", lastModified));
+        String date = Utils.getHttpDateFormatter().format(new Date(lastModified));
+        assertTrue(ByteRanges.ifRangeMatches(date, "\"a\"", lastModified));
+        assertFalse(ByteRanges.ifRangeMatches(date, "\"a\"", lastModified + 5000));
+        assertFalse(ByteRanges.ifRangeMatches(date, "\"a\"", 0));
+    }
+
+    static HttpRequest request(String range) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/file.txt");
+        if (range != null) {
+            request.setHeader(RANGE, range);
+        }
+        return request;
+    }
+
+    static String string(ChannelBuffer buffer) {
+        return buffer.toString(ByteRanges.ASCII);
+    }
+
+    @Test
+    public void slicesContent() {
+        ChannelBuffer content = ChannelBuffers.copiedBuffer("0123456789", ByteRanges.ASCII);
+
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        assertEquals("0123456789", string(PlayHandler.contentRanges(request(null), response, content, 0)));
+        assertEquals("bytes", response.getHeader(ACCEPT_RANGES));
+
+        response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        assertEquals("234", string(PlayHandler.contentRanges(request("bytes=2-4"), response, content, 0)));
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.getStatus());
+        assertEquals("bytes 2-4/10", response.getHeader(CONTENT_RANGE));
+
+        response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.setHeader(CONTENT_TYPE, "text/plain");
+        ChannelBuffer multipart = PlayHandler.contentRanges(request("bytes=0-1,-2"), response, content, 0);
+        ByteRanges ranges = ByteRanges.parse("bytes=0-1,-2", 10);
+        assertEquals(ranges.multipartLength("text/plain"), multipart.readableBytes());
+        String boundary = response.getHeader(CONTENT_TYPE).substring("multipart/byteranges; boundary=".length());
+        assertEquals("--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/10\r\n\r\n01"
+                + "\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 8-9/10\r\n\r\n89"
+                + "\r\n--" + boundary + "--\r\n", string(multipart));
+
+        response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        assertEquals(0, PlayHandler.contentRanges(request("bytes=20-"), response, content, 0).readableBytes());
+        assertEquals(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(CONTENT_RANGE));
+    }
+}
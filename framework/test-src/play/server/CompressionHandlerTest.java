@@ -0,0 +1,137 @@
+package play.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.PlayBuilder;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.*;
+import static org.junit.Assert.*;
+
+public class CompressionHandlerTest {
+
+    CompressionHandler handler;
+    EncoderEmbedder<Object> embedder;
+
+    @Before
+    public void setUp() {
+        Properties configuration = new Properties();
+        configuration.setProperty("play.netty.compression.minSize", "100");
+        new PlayBuilder().withConfiguration(configuration).build();
+        handler = new CompressionHandler();
+        embedder = new EncoderEmbedder<Object>(handler);
+    }
+
+    static HttpResponse response(String contentType, String content) throws Exception {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.setHeader(CONTENT_TYPE, contentType);
+        if (content != null) {
+            byte[] bytes = content.getBytes("utf-8");
+            response.setContent(ChannelBuffers.wrappedBuffer(bytes));
+            response.setHeader(CONTENT_LENGTH, String.valueOf(bytes.length));
+        }
+        return response;
+    }
+
+    static String content(int size) {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < size) {
+            content.append("<p>Hello World</p>");
+        }
+        return content.toString();
+    }
+
+    static String gunzip(ChannelBuffer buffer) throws Exception {
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), bytes);
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] read = new byte[1024];
+        int length;
+        while ((length = in.read(read)) > 0) {
+            out.write(read, 0, length);
+        }
+        return out.toString("utf-8");
+    }
+
+    @Test
+    public void compressesAcceptedContent() throws Exception {
+        String content = content(2000);
+        handler.acceptEncodings.offer("gzip, deflate");
+        embedder.offer(response("text/html; charset=utf-8", content));
+
+        HttpResponse response = (HttpResponse) embedder.poll();
+        assertEquals("gzip", response.getHeader(CONTENT_ENCODING));
+        assertEquals(ACCEPT_ENCODING, response.getHeader(VARY));
+        assertEquals(String.valueOf(response.getContent().readableBytes()), response.getHeader(CONTENT_LENGTH));
+        assertTrue(response.getContent().readableBytes() < content.length());
+        assertEquals(content, gunzip(response.getContent()));
+    }
+
+    @Test
+    public void sendsOtherContentAsIs() throws Exception {
+        // Small
+        handler.acceptEncodings.offer("gzip");
+        embedder.offer(response("text/html", "<p>Hello</p>"));
+        assertNull(((HttpResponse) embedder.poll()).getHeader(CONTENT_ENCODING));
+
+        // Already compressed
+        handler.acceptEncodings.offer("gzip");
+        embedder.offer(response("image/png", content(2000)));
+        assertNull(((HttpResponse) embedder.poll()).getHeader(CONTENT_ENCODING));
+
+        // Not accepted
+        handler.acceptEncodings.offer("gzip;q=0, identity");
+        embedder.offer(response("text/html", content(2000)));
+        assertNull(((HttpResponse) embedder.poll()).getHeader(CONTENT_ENCODING));
+    }
+
+    @Test
+    public void compressesChunks() throws Exception {
+        handler.acceptEncodings.offer("gzip");
+        HttpResponse chunked = response("text/plain", null);
+        chunked.setHeader(TRANSFER_ENCODING, "chunked");
+        embedder.offer(chunked);
+        embedder.offer(new DefaultHttpChunk(ChannelBuffers.wrappedBuffer("Hello ".getBytes("utf-8"))));
+        embedder.offer(new DefaultHttpChunk(ChannelBuffers.wrappedBuffer("World".getBytes("utf-8"))));
+        embedder.offer(HttpChunk.LAST_CHUNK);
+
+        HttpResponse response = (HttpResponse) embedder.poll();
+        assertEquals("gzip", response.getHeader(CONTENT_ENCODING));
+        ChannelBuffer compressed = ChannelBuffers.dynamicBuffer();
+        Object message;
+        HttpChunk chunk = null;
+        while ((message = embedder.poll()) != null) {
+            chunk = (HttpChunk) message;
+            compressed.writeBytes(chunk.getContent());
+        }
+        assertTrue(chunk.isLast());
+        assertEquals("Hello World", gunzip(compressed));
+    }
+
+    @Test
+    public void acceptEncoding() {
+        assertTrue(CompressionHandler.accepts("gzip,deflate", "gzip"));
+        assertTrue(CompressionHandler.accepts("deflate, gzip;q=0.5", "gzip"));
+        assertTrue(CompressionHandler.accepts("*", "gzip"));
+        assertFalse(CompressionHandler.accepts("gzip;q=0", "gzip"));
+        assertFalse(CompressionHandler.accepts("*, gzip;q=0", "gzip"));
+        assertFalse(CompressionHandler.accepts("deflate", "gzip"));
+        assertFalse(CompressionHandler.accepts(null, "gzip"));
+    }
+}
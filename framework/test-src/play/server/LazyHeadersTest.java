@@ -0,0 +1,104 @@
+package play.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.PlayBuilder;
+import play.mvc.Http;
+
+import static org.junit.Assert.*;
+
+public class LazyHeadersTest {
+
+    Play.Mode mode;
+
+    @Before
+    public void setUp() {
+        mode = Play.mode;
+        new PlayBuilder().build();
+        Play.mode = Play.Mode.PROD;
+    }
+
+    @After
+    public void tearDown() {
+        Play.mode = mode;
+    }
+
+    static HttpRequest request() {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        request.setHeader("Host", "localhost");
+        request.setHeader("Accept", "text/html");
+        request.addHeader("X-Forwarded-For", "10.0.0.1");
+        request.addHeader("X-Forwarded-For", "10.0.0.2");
+        request.setHeader("Cookie", "PLAY_SESSION=abc; lang=fr");
+        return request;
+    }
+
+    @Test
+    public void readsASingleHeaderWithoutParsing() {
+        PlayHandler.LazyHeaders headers = new PlayHandler.LazyHeaders(request());
+        assertEquals("text/html", headers.get("accept").value());
+        assertEquals(2, headers.get("x-forwarded-for").values.size());
+        assertNull(headers.get("authorization"));
+        assertNull(headers.get("Accept"));
+        assertTrue(headers.containsKey("host"));
+        assertFalse(headers.isLoaded());
+    }
+
+    @Test
+    public void keepsTheHeadersReadOnLoad() {
+        PlayHandler.LazyHeaders headers = new PlayHandler.LazyHeaders(request());
+        Http.Header accept = headers.get("accept");
+        accept.values.add("application/json");
+        assertEquals(4, headers.size());
+        assertTrue(headers.isLoaded());
+        assertSame(accept, headers.get("accept"));
+        assertEquals("localhost", headers.get("host").value());
+        assertNull(headers.get("Host"));
+    }
+
+    @Test
+    public void matchesTheEagerHeaders() {
+        Map<String, Http.Header> eager = PlayHandler.getHeaders(request());
+        PlayHandler.LazyHeaders headers = new PlayHandler.LazyHeaders(request());
+        assertEquals(eager.keySet(), headers.keySet());
+        for (String name : eager.keySet()) {
+            assertEquals(eager.get(name).values, headers.get(name).values);
+        }
+    }
+
+    @Test
+    public void decodesTheCookiesOnFirstAccess() {
+        PlayHandler.LazyCookies cookies = new PlayHandler.LazyCookies(request());
+        assertFalse(cookies.isLoaded());
+        assertEquals("fr", cookies.get("lang").value);
+        assertTrue(cookies.isLoaded());
+        assertEquals(2, cookies.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void isSerializedAsAHashMap() throws Exception {
+        PlayHandler.LazyHeaders headers = new PlayHandler.LazyHeaders(request());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(headers);
+        out.close();
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertTrue(copy instanceof HashMap);
+        assertEquals("text/html", ((Map<String, Http.Header>) copy).get("accept").value());
+    }
+}
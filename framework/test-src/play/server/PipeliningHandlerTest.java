@@ -0,0 +1,180 @@
+package play.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PipeliningHandlerTest {
+
+    static final int REQUESTS = 500;
+
+    ServerBootstrap bootstrap;
+    Channel server;
+    ScheduledExecutorService executor;
+
+    /**
+     * Answer the requests in a random order, as concurrent invocations would: some at once in the I/O thread, the
+     * others after a random delay, with the body of some written apart from the headers.
+     */
+    class Responder extends SimpleChannelUpstreamHandler {
+
+        final Random random = new Random(42);
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+            final Channel channel = ctx.getChannel();
+            final String uri = ((HttpRequest) e.getMessage()).getUri();
+            final int index = Integer.parseInt(uri.substring(1));
+            if (index % 10 == 0) {
+                respond(channel, uri, false);
+                return;
+            }
+            final PipeliningHandler.Slot slot = PipeliningHandler.current();
+            slot.retain();
+            executor.schedule(new Runnable() {
+
+                public void run() {
+                    PipeliningHandler.Slot previous = PipeliningHandler.enter(slot);
+                    try {
+                        respond(channel, uri, index % 3 == 0);
+                    } finally {
+                        PipeliningHandler.leave(previous);
+                        slot.release();
+                    }
+                }
+            }, random.nextInt(20), TimeUnit.MILLISECONDS);
+        }
+
+        void respond(Channel channel, String uri, boolean split) {
+            HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+            response.setHeader(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(uri.length()));
+            if (split) {
+                channel.write(response);
+                Thread.yield();
+                channel.write(ChannelBuffers.copiedBuffer(uri.getBytes()));
+            } else {
+                response.setContent(ChannelBuffers.copiedBuffer(uri.getBytes()));
+                channel.write(response);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        executor = Executors.newScheduledThreadPool(8);
+        bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+
+            public ChannelPipeline getPipeline() throws Exception {
+                ChannelPipeline pipeline = Channels.pipeline();
+                pipeline.addLast("decoder", new HttpRequestDecoder());
+                pipeline.addLast("encoder", new HttpResponseEncoder());
+                pipeline.addLast("pipelining", new PipeliningHandler());
+                pipeline.addLast("handler", new Responder());
+                return pipeline;
+            }
+        });
+        server = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @After
+    public void tearDown() {
+        server.close().awaitUninterruptibly();
+        bootstrap.releaseExternalResources();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void writesResponsesInRequestOrder() throws Exception {
+        Socket socket = new Socket("127.0.0.1", ((InetSocketAddress) server.getLocalAddress()).getPort());
+        socket.setSoTimeout(10000);
+        try {
+            // All the requests at once, before reading any response
+            StringBuilder requests = new StringBuilder();
+            for (int i = 0; i < REQUESTS; i++) {
+                requests.append("GET /").append(i).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toString().getBytes("US-ASCII"));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            for (int i = 0; i < REQUESTS; i++) {
+                assertEquals("/" + i, readResponse(in));
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Read a response, returning its body
+     */
+    static String readResponse(InputStream in) throws IOException {
+        String status = readLine(in);
+        assertEquals("HTTP/1.1 200 OK", status);
+        int length = -1;
+        String line;
+        while ((line = readLine(in)).length() > 0) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        assertTrue(length >= 0);
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) {
+                throw new IOException("Connection closed");
+            }
+            read += n;
+        }
+        return new String(body, "US-ASCII");
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Connection closed");
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return line.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,79 @@
+package play.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+
+import play.Play;
+import play.PlayBuilder;
+import play.mvc.Http;
+
+/**
+ * Compare the allocations of the eager and lazy parsing of the request headers and cookies, for a request whose
+ * action only reads the headers the framework reads itself (Accept and Authorization), ie. a static file or a health
+ * check.
+ * <p/>
+ * Run it with the framework and test classes in the classpath: <code>java play.server.RequestParsingBenchmark</code>
+ */
+public class RequestParsingBenchmark {
+
+    static final int ITERATIONS = 200000;
+
+    static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        new PlayBuilder().build();
+        Play.mode = Play.Mode.PROD;
+        HttpRequest request = browserRequest();
+        for (int round = 0; round < 3; round++) {
+            report("eager", measure(request, false));
+            report("lazy", measure(request, true));
+        }
+    }
+
+    static HttpRequest browserRequest() {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/public/images/logo.png");
+        request.setHeader("Host", "www.example.com");
+        request.setHeader("User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:10.0) Gecko/20100101 Firefox/10.0");
+        request.setHeader("Accept", "image/png,image/*;q=0.8,*/*;q=0.5");
+        request.setHeader("Accept-Language", "en-us,en;q=0.5");
+        request.setHeader("Accept-Encoding", "gzip, deflate");
+        request.setHeader("Accept-Charset", "ISO-8859-1,utf-8;q=0.7,*;q=0.7");
+        request.setHeader("Connection", "keep-alive");
+        request.setHeader("Referer", "http://www.example.com/");
+        request.setHeader("If-Modified-Since", "Sat, 29 Oct 1994 19:43:31 GMT");
+        request.setHeader("Cache-Control", "max-age=0");
+        request.setHeader("Cookie", "PLAY_SESSION=0123456789abcdef-___AT:abcdef; PLAY_FLASH=; PLAY_ERRORS=; lang=en; __utma=1.2.3.4.5.6");
+        return request;
+    }
+
+    /**
+     * @return The bytes allocated and the nanoseconds spent by request
+     */
+    static long[] measure(HttpRequest request, boolean lazy) {
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Map<String, Http.Header> headers = lazy ? new PlayHandler.LazyHeaders(request) : PlayHandler.getHeaders(request);
+            Map<String, Http.Cookie> cookies = lazy ? new PlayHandler.LazyCookies(request) : PlayHandler.getCookies(request);
+            // What Request.createRequest reads
+            sink = headers.get("accept");
+            sink = headers.get("authorization");
+            sink = cookies;
+        }
+        long time = System.nanoTime() - start;
+        return new long[]{(allocatedBytes() - allocated) / ITERATIONS, time / ITERATIONS};
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static void report(String name, long[] result) {
+        System.out.println(String.format("%-6s %6d bytes/request %6d ns/request", name, result[0], result[1]));
+    }
+}
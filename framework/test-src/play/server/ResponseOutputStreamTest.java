@@ -0,0 +1,57 @@
+package play.server;
+
+import java.nio.charset.Charset;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.PlayBuilder;
+
+import static org.junit.Assert.*;
+
+public class ResponseOutputStreamTest {
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        ResponseOutputStream.pool.clear();
+        ResponseOutputStream.pooled.set(0);
+    }
+
+    @Test
+    public void sharesItsArray() throws Exception {
+        ResponseOutputStream out = new ResponseOutputStream();
+        out.write("Hello".getBytes("utf-8"));
+        ChannelBuffer buffer = out.buffer();
+        assertEquals(5, buffer.readableBytes());
+        assertEquals("Hello", buffer.toString(Charset.forName("utf-8")));
+        out.write('!');
+        assertSame(out.buffer().array(), buffer.array());
+    }
+
+    @Test
+    public void recyclesItsArray() throws Exception {
+        ResponseOutputStream out = new ResponseOutputStream();
+        out.write(1);
+        byte[] array = out.buffer().array();
+        out.recycle();
+        assertEquals(0, out.size());
+        assertEquals(1, ResponseOutputStream.pooled.get());
+
+        ResponseOutputStream next = new ResponseOutputStream();
+        assertEquals(0, next.size());
+        assertEquals(0, ResponseOutputStream.pooled.get());
+        next.write(2);
+        assertSame(array, next.buffer().array());
+    }
+
+    @Test
+    public void dropsLargeArrays() throws Exception {
+        ResponseOutputStream out = new ResponseOutputStream();
+        out.write(new byte[ResponseOutputStream.MAX_POOLED + 1]);
+        out.recycle();
+        assertEquals(0, ResponseOutputStream.pooled.get());
+        assertTrue(ResponseOutputStream.pool.isEmpty());
+    }
+}
@@ -0,0 +1,106 @@
+package play.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.PlayBuilder;
+import play.vfs.VirtualFile;
+
+import static org.junit.Assert.*;
+
+public class StaticCacheTest {
+
+    File dir;
+    Play.Mode mode;
+
+    @Before
+    public void setUp() {
+        mode = Play.mode;
+        Properties configuration = new Properties();
+        configuration.setProperty("play.netty.compression", "true");
+        new PlayBuilder().withConfiguration(configuration).build();
+        Play.mode = Play.Mode.PROD;
+        dir = new File(System.getProperty("java.io.tmpdir"), "StaticCacheTest" + System.nanoTime());
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        Play.mode = mode;
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    VirtualFile write(String name, String content) throws Exception {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("utf-8"));
+        out.close();
+        return VirtualFile.open(file);
+    }
+
+    static String content(int size) {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < size) {
+            content.append("body { color: red; }\n");
+        }
+        return content.toString();
+    }
+
+    @Test
+    public void cachesSmallFiles() throws Exception {
+        StaticCache cache = new StaticCache(10000, 1000);
+        VirtualFile css = write("main.css", content(500));
+        VirtualFile big = write("big.css", content(2000));
+
+        StaticCache.Entry entry = cache.load("/public/main.css", css, null);
+        assertNotNull(entry);
+        assertSame(entry, cache.get("/public/main.css"));
+        assertEquals(500, entry.identity.content.readableBytes(), 20);
+        assertTrue(entry.identity.etag.startsWith("\""));
+        // Kept gzipped too, with another ETag
+        assertNotNull(entry.gzipped);
+        assertTrue(entry.gzipped.content.readableBytes() < entry.identity.content.readableBytes());
+        assertFalse(entry.gzipped.etag.equals(entry.identity.etag));
+
+        assertNull(cache.load("/public/big.css", big, null));
+        assertNull(cache.get("/public/big.css"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyServedFiles() throws Exception {
+        Play.configuration.setProperty("play.netty.compression", "false");
+        StaticCache cache = new StaticCache(1000, 1000);
+        cache.load("/a.css", write("a.css", content(400)), null);
+        cache.load("/b.css", write("b.css", content(400)), null);
+        cache.get("/a.css");
+        cache.load("/c.css", write("c.css", content(400)), null);
+
+        assertNotNull(cache.get("/a.css"));
+        assertNull(cache.get("/b.css"));
+        assertNotNull(cache.get("/c.css"));
+        assertTrue(cache.size <= 1000);
+    }
+
+    @Test
+    public void checksFilesChangesInDev() throws Exception {
+        StaticCache cache = new StaticCache(10000, 1000);
+        VirtualFile css = write("main.css", content(100));
+        cache.load("/main.css", css, null);
+
+        write("main.css", content(200));
+        assertNotNull(cache.get("/main.css"));
+
+        Play.mode = Play.Mode.DEV;
+        assertNull(cache.get("/main.css"));
+        assertEquals(0, cache.size);
+    }
+}
@@ -0,0 +1,199 @@
+package play.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Play;
+import play.PlayBuilder;
+import play.mvc.ActionRegistry;
+import play.mvc.Router;
+
+import controllers.Accounts;
+
+import static org.junit.Assert.*;
+
+public class StreamChunkAggregatorTest {
+
+    File tmpDir;
+    Play.Mode mode;
+    boolean started;
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        tmpDir = Play.tmpDir;
+        mode = Play.mode;
+        started = Play.started;
+        Play.tmpDir = new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    @After
+    public void tearDown() {
+        Play.tmpDir = tmpDir;
+        Play.mode = mode;
+        Play.started = started;
+        Router.routes.clear();
+    }
+
+    static HttpRequest post(String contentLength) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload");
+        request.setChunked(true);
+        if (contentLength != null) {
+            request.setHeader(HttpHeaders.Names.CONTENT_LENGTH, contentLength);
+        }
+        return request;
+    }
+
+    static HttpRequest request(String uri) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri);
+        request.setChunked(true);
+        return request;
+    }
+
+    static HttpChunk chunk(String content) throws Exception {
+        return new DefaultHttpChunk(ChannelBuffers.wrappedBuffer(content.getBytes("utf-8")));
+    }
+
+    static HttpRequest aggregate(StreamChunkAggregator aggregator, HttpRequest request, String... chunks) throws Exception {
+        DecoderEmbedder<HttpRequest> embedder = new DecoderEmbedder<HttpRequest>(aggregator);
+        embedder.offer(request);
+        for (String chunk : chunks) {
+            embedder.offer(chunk(chunk));
+        }
+        embedder.offer(HttpChunk.LAST_CHUNK);
+        return embedder.poll();
+    }
+
+    @Test
+    public void keepsSmallBodiesInMemory() throws Exception {
+        HttpRequest request = aggregate(new StreamChunkAggregator(-1, 100), post(null), "Hello ", "World");
+        assertFalse(request.getContent() instanceof FileChannelBuffer);
+        assertEquals("Hello World", request.getContent().toString(ByteRanges.ASCII));
+        assertEquals("11", request.getHeader(HttpHeaders.Names.CONTENT_LENGTH));
+    }
+
+    @Test
+    public void writesLargeBodiesToFile() throws Exception {
+        HttpRequest request = aggregate(new StreamChunkAggregator(-1, 8), post(null), "Hello ", "World");
+        assertTrue(request.getContent() instanceof FileChannelBuffer);
+        assertEquals("11", request.getHeader(HttpHeaders.Names.CONTENT_LENGTH));
+    }
+
+    @Test
+    public void discardsTooLargeBodies() throws Exception {
+        // Known from its Content-Length
+        HttpRequest request = aggregate(new StreamChunkAggregator(10, 100), post("11"), "Hello ", "World");
+        assertEquals(StreamChunkAggregator.EXCEEDED, request.getHeader(HttpHeaders.Names.WARNING));
+        assertFalse(request.getContent().readable());
+
+        // Found while receiving it
+        request = aggregate(new StreamChunkAggregator(10, 100), post(null), "Hello ", "World");
+        assertEquals(StreamChunkAggregator.EXCEEDED, request.getHeader(HttpHeaders.Names.WARNING));
+        assertFalse(request.getContent().readable());
+    }
+
+    @Test
+    public void passesOnTheStreamedBodyRequestsAtOnce() throws Exception {
+        Play.started = true;
+        Play.mode = Play.Mode.PROD;
+        Router.routes.clear();
+        Router.appendRoute("POST", "/upload", "Accounts.upload", null, null, null, 0);
+        Router.appendRoute("PUT", "/files", "Accounts.upload", null, null, null, 0);
+        Router.appendRoute("GET", "/public/", "staticDir:public", null, null, null, 0);
+        Router.appendRoute("*", "/{controller}/{action}", "{controller}.{action}", null, null, null, 0);
+        ActionRegistry.build(Arrays.<Class>asList(Accounts.class));
+
+        assertTrue(streamed(request("/upload")));
+        assertTrue(streamed(request("/accounts/upload")));
+        assertFalse(streamed(request("/accounts/show")));
+        assertFalse(streamed(request("/missing/action")));
+        assertFalse(streamed(request("/files")));
+        assertTrue(streamed(request("/files?x-http-method-override=PUT")));
+        HttpRequest overridden = request("/files");
+        overridden.setHeader("X-HTTP-Method-Override", "PUT");
+        assertTrue(streamed(overridden));
+
+        // Only from the actions registered at startup
+        Play.mode = Play.Mode.DEV;
+        assertFalse(streamed(request("/upload")));
+    }
+
+    /**
+     * Check whether a request is passed on as soon as its headers are received, with a streamed body
+     */
+    static boolean streamed(HttpRequest request) throws Exception {
+        DecoderEmbedder<HttpRequest> embedder = new DecoderEmbedder<HttpRequest>(new StreamChunkAggregator(-1, 100));
+        embedder.offer(request);
+        HttpRequest received = embedder.poll();
+        if (received == null) {
+            return false;
+        }
+        assertTrue(received.getContent() instanceof StreamedChannelBuffer);
+        embedder.offer(HttpChunk.LAST_CHUNK);
+        return true;
+    }
+
+    @Test
+    public void streamsBody() throws Exception {
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new StreamChunkAggregator(-1, 100));
+        final BodyStream stream = new BodyStream(embedder.getPipeline().getChannel(), 8);
+        Thread receiver = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    stream.offer(chunk("Hello ").getContent());
+                    Thread.sleep(50);
+                    stream.offer(chunk("World").getContent());
+                    stream.end();
+                } catch (Exception e) {
+                    stream.fail(new IOException(e.getMessage()));
+                }
+            }
+        };
+        receiver.start();
+        StringBuilder body = new StringBuilder();
+        byte[] buffer = new byte[4];
+        int read;
+        while ((read = stream.read(buffer, 0, buffer.length)) >= 0) {
+            body.append(new String(buffer, 0, read, "utf-8"));
+        }
+        receiver.join();
+        assertEquals("Hello World", body.toString());
+    }
+
+    @Test
+    public void failsStreamedBody() throws Exception {
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new StreamChunkAggregator(-1, 100));
+        BodyStream stream = new BodyStream(embedder.getPipeline().getChannel(), 100);
+        stream.offer(chunk("Hello").getContent());
+        stream.fail(new IOException("Connection closed"));
+        assertEquals(5, stream.read(new byte[10], 0, 10));
+        try {
+            stream.read();
+            fail("The body is incomplete");
+        } catch (IOException e) {
+            assertEquals("Connection closed", e.getMessage());
+        }
+
+        // Discarded once closed
+        stream = new BodyStream(embedder.getPipeline().getChannel(), 100);
+        stream.close();
+        stream.offer(chunk("Hello").getContent());
+        assertEquals(0, stream.available());
+    }
+}
@@ -38,4 +38,25 @@ public class HTTPTest {
         assertThat(defaultContentType.encoding).isEqualTo(null);
         assertThat(defaultContentType.contentType).isEqualTo("text/html");
     }
+
+    @Test
+    public void testContentEtag() throws Exception {
+        java.io.ByteArrayOutputStream content = new java.io.ByteArrayOutputStream();
+        content.write("Hello".getBytes("utf-8"));
+        String etag = HTTP.etag(content);
+        assertThat(etag).startsWith("\"").endsWith("\"");
+        assertThat(HTTP.etag(content)).isEqualTo(etag);
+
+        content.write('!');
+        assertThat(HTTP.etag(content)).isNotEqualTo(etag);
+    }
+
+    @Test
+    public void testEtagMatches() {
+        assertThat(HTTP.etagMatches("\"abc\"", "\"abc\"")).isTrue();
+        assertThat(HTTP.etagMatches("\"xyz\", W/\"abc\"", "\"abc\"")).isTrue();
+        assertThat(HTTP.etagMatches("*", "\"abc\"")).isTrue();
+        assertThat(HTTP.etagMatches("\"xyz\"", "\"abc\"")).isFalse();
+        assertThat(HTTP.etagMatches(null, "\"abc\"")).isFalse();
+    }
 }
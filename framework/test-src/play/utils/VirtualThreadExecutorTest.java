@@ -0,0 +1,139 @@
+package play.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import play.PlayBuilder;
+
+import static org.junit.Assert.*;
+
+public class VirtualThreadExecutorTest {
+
+    static final ThreadLocal<String> local = new ThreadLocal<String>();
+
+    static ScheduledThreadPoolExecutor create(String threads) {
+        Properties configuration = new Properties();
+        configuration.setProperty("play.pool", "4");
+        if (threads != null) {
+            configuration.setProperty("play.pool.threads", threads);
+        }
+        new PlayBuilder().withConfiguration(configuration).build();
+        return VirtualThreadExecutor.create("test", "play.pool", "1");
+    }
+
+    @Test
+    public void usesPlatformThreadsByDefault() {
+        ScheduledThreadPoolExecutor executor = create(null);
+        assertFalse(executor instanceof VirtualThreadExecutor);
+        assertEquals(4, executor.getCorePoolSize());
+        executor.shutdown();
+    }
+
+    @Test
+    public void fallsBackToPlatformThreadsBeforeJava21() {
+        Assume.assumeTrue(!VirtualThreadExecutor.isSupported());
+        ScheduledThreadPoolExecutor executor = create("virtual");
+        assertFalse(executor instanceof VirtualThreadExecutor);
+        executor.shutdown();
+    }
+
+    @Test
+    public void runsEachTaskInAFreshThreadWithinTheCap() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+        ScheduledThreadPoolExecutor executor = create("virtual");
+        assertTrue(executor instanceof VirtualThreadExecutor);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger leaked = new AtomicInteger();
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(executor.submit(new Callable<String>() {
+
+                public String call() throws Exception {
+                    if (local.get() != null) {
+                        leaked.incrementAndGet();
+                    }
+                    local.set("request");
+                    int now = running.incrementAndGet();
+                    int max = maxRunning.get();
+                    while (now > max && !maxRunning.compareAndSet(max, now)) {
+                        max = maxRunning.get();
+                    }
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+                    return Thread.currentThread().getName();
+                }
+            }));
+        }
+        for (Future<String> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS).startsWith("test-virtual-"));
+        }
+        assertTrue(maxRunning.get() <= 4);
+        assertEquals(0, leaked.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void runsScheduledTasks() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+        ScheduledThreadPoolExecutor executor = create("virtual");
+        final CountDownLatch runs = new CountDownLatch(3);
+        ScheduledFuture<?> periodic = executor.scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
+                runs.countDown();
+            }
+        }, 1, 1, TimeUnit.MILLISECONDS);
+        ScheduledFuture<String> delayed = executor.schedule(new Callable<String>() {
+
+            public String call() {
+                return "done";
+            }
+        }, 1, TimeUnit.HOURS);
+        assertTrue(runs.await(5, TimeUnit.SECONDS));
+        periodic.cancel(false);
+        assertTrue(VirtualThreadExecutor.unwrap(executor.getQueue().iterator().next()) instanceof ScheduledFuture);
+        assertFalse(delayed.isDone());
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void interruptsTheRunningTasksOnShutdownNow() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+        ScheduledThreadPoolExecutor executor = create("virtual");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(1, ((VirtualThreadExecutor) executor).threads.size());
+        executor.shutdownNow();
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 500 && executor.getActiveCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getActiveCount());
+        assertTrue(((VirtualThreadExecutor) executor).threads.isEmpty());
+    }
+}
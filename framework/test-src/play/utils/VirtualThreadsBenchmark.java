@@ -0,0 +1,74 @@
+package play.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import play.PlayBuilder;
+
+/**
+ * Compare the platform and virtual threads executors for invocations that mostly wait for I/O, ie. a 20 ms JDBC query
+ * and a little computation, with the same concurrency and with a larger one.
+ * <p/>
+ * Run it on Java 21 or later with the framework and test classes in the classpath:
+ * <code>java play.utils.VirtualThreadsBenchmark</code>
+ */
+public class VirtualThreadsBenchmark {
+
+    static final int INVOCATIONS = 5000;
+    static final long BLOCKING_MILLIS = 20;
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        if (!VirtualThreadExecutor.isSupported()) {
+            System.out.println("Virtual threads need Java 21 or later");
+            return;
+        }
+        for (int round = 0; round < 2; round++) {
+            run("platform", 32);
+            run("virtual", 32);
+            run("platform", 512);
+            run("virtual", 512);
+        }
+    }
+
+    static void run(String threads, int size) throws Exception {
+        Properties configuration = new Properties();
+        configuration.setProperty("play.pool", String.valueOf(size));
+        configuration.setProperty("play.pool.threads", threads);
+        new PlayBuilder().withConfiguration(configuration).build();
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        mx.resetPeakThreadCount();
+        ScheduledThreadPoolExecutor executor = VirtualThreadExecutor.create("bench", "play.pool", "1");
+        final CountDownLatch done = new CountDownLatch(INVOCATIONS);
+        long start = System.nanoTime();
+        for (int i = 0; i < INVOCATIONS; i++) {
+            executor.submit(new Runnable() {
+
+                public void run() {
+                    try {
+                        Thread.sleep(BLOCKING_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    long hash = 0;
+                    for (int j = 0; j < 10000; j++) {
+                        hash = hash * 31 + j;
+                    }
+                    sink = hash;
+                    done.countDown();
+                }
+            });
+        }
+        done.await(5, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        System.out.println(String.format("%-8s x %4d: %6d ms, %8.0f invocations/s, %4d platform threads at most",
+                threads, size, elapsed / 1000000, INVOCATIONS * 1e9 / elapsed, mx.getPeakThreadCount()));
+    }
+}
@@ -0,0 +1,86 @@
+package play.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import play.libs.F;
+
+import static org.junit.Assert.*;
+
+public class WheelTimerTest {
+
+    @Test
+    public void runsTheTasksAfterTheirDelay() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            long start = System.nanoTime();
+            Future<String> future = WheelTimer.schedule(new Callable<String>() {
+
+                public String call() {
+                    return Thread.currentThread().getName();
+                }
+            }, 50, TimeUnit.MILLISECONDS, executor);
+            assertFalse(future.isDone());
+            assertNotSame("WheelTimer", future.get(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void forgetsTheCancelledTasks() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        long cancelled = WheelTimer.getCancelled();
+        int pending = WheelTimer.getPending();
+        Future<?> future = WheelTimer.schedule(new Runnable() {
+
+            public void run() {
+                ran.countDown();
+            }
+        }, 20, TimeUnit.MILLISECONDS, null);
+        assertEquals(pending + 1, WheelTimer.getPending());
+        assertTrue(future.cancel(false));
+        assertFalse(future.cancel(false));
+        assertEquals(pending, WheelTimer.getPending());
+        assertEquals(cancelled + 1, WheelTimer.getCancelled());
+        assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+        try {
+            future.get();
+            fail("The task is cancelled");
+        } catch (CancellationException e) {
+        }
+    }
+
+    @Test
+    public void failsTheTasksRejectedByTheirExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        Future<?> future = WheelTimer.schedule(new Runnable() {
+
+            public void run() {
+            }
+        }, 1, TimeUnit.MILLISECONDS, executor);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("The executor is shut down");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void redeemsTheTimeouts() throws Exception {
+        F.Timeout timeout = new F.Timeout(10);
+        assertSame(timeout, timeout.get(5, TimeUnit.SECONDS));
+    }
+}